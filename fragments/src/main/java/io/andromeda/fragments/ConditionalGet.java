@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import ro.pippo.core.Response;
+import ro.pippo.core.route.RouteContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Conditional GET support (ETag and Last-Modified, RFC 7232). The validators are derived from values computed while
+ * loading, so checking them does not require rendering the page.
+ * @author Alexander Brandt
+ */
+final class ConditionalGet {
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+    static final String IF_NONE_MATCH = "If-None-Match";
+    static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    static final int NOT_MODIFIED = 304;
+
+    /** The number of characters of the content hash used in the ETag. */
+    private static final int HASH_LENGTH = 16;
+    /** The suffix of the ETag of the gzip compressed form of a page. */
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * Creates a strong ETag.
+     * @param hash The hash of the content, e.g. Fragment.getContentHash().
+     * @param language The language of the page or null.
+     * @param version The version of the data shared by all pages, changed whenever the Fragments or the default context
+     *                change.
+     * @return The quoted ETag.
+     */
+    static String createETag(String hash, String language, long version) {
+        String localHash = hash == null ? "0" : hash.substring(0, Math.min(HASH_LENGTH, hash.length()));
+        return '"' + localHash + '-' + (language == null ? "none" : language) + '-' + Long.toHexString(version) + '"';
+    }
+
+    /**
+     * Returns the ETag of the gzip compressed form of a page. Different content codings need different strong ETags
+     * (RFC 7232), otherwise a cache could serve the wrong form after revalidating it.
+     * @param etag The quoted ETag of the page.
+     * @return The quoted ETag of the compressed page.
+     */
+    static String toGzipETag(String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + '"';
+    }
+
+    /**
+     * Returns the hash of the key of a page without content hash (e.g. an overview page), to be used for its ETag.
+     * @param key The key of the page, e.g. its URL.
+     * @return The hex encoded hash.
+     */
+    static String hash(String key) {
+        return FragmentCache.hash(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks the conditional request headers. If-Modified-Since is only evaluated, when there is no If-None-Match. The
+     * ETag of the gzip compressed form matches, too.
+     * @param ifNoneMatch The value of If-None-Match or null.
+     * @param ifModifiedSince The value of If-Modified-Since in milliseconds or -1.
+     * @param etag The ETag of the page.
+     * @param lastModified The modification time of the page in milliseconds.
+     * @return True, if the client has the current page.
+     */
+    static boolean isNotModified(String ifNoneMatch, long ifModifiedSince, String etag, long lastModified) {
+        if (ifNoneMatch != null) {
+            return getMatchingETag(ifNoneMatch, etag) != null;
+        }
+        // HTTP dates have a resolution of one second
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Returns the ETag of the page matching If-None-Match.
+     * @param ifNoneMatch The value of If-None-Match.
+     * @param etag The ETag of the page.
+     * @return The ETag, the ETag of the gzip compressed form or null, if none of them matches.
+     */
+    private static String getMatchingETag(String ifNoneMatch, String etag) {
+        String gzipETag = toGzipETag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            // Weak comparison, as required for If-None-Match
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if ("*".equals(value) || etag.equals(value)) {
+                return etag;
+            }
+            if (gzipETag.equals(value)) {
+                return gzipETag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the validators of the response and sends "304 Not Modified", if the client has the current page. The ETag
+     * is replaced by the one of the compressed form, when the page is sent compressed, see RenderedPage.
+     * @param routeContext The context of the request.
+     * @param etag The ETag of the page.
+     * @param lastModified The modification time of the page in milliseconds.
+     * @return True, if the response was sent.
+     */
+    static boolean handle(RouteContext routeContext, String etag, long lastModified) {
+        Response response = routeContext.getResponse();
+        response.header(ETAG, etag);
+        response.header(LAST_MODIFIED, new Date(lastModified));
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = routeContext.getRequest().getHttpServletRequest().getDateHeader(IF_MODIFIED_SINCE);
+        } catch (IllegalArgumentException e) {
+            // Invalid date, ignore the header
+            ifModifiedSince = -1;
+        }
+        if (!isNotModified(routeContext.getRequest().getHeader(IF_NONE_MATCH), ifModifiedSince, etag, lastModified)) {
+            return false;
+        }
+        String ifNoneMatch = routeContext.getRequest().getHeader(IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // The 304 response has the ETag of the form the client has
+            response.header(ETAG, getMatchingETag(ifNoneMatch, etag));
+        }
+        response.status(NOT_MODIFIED);
+        response.commit();
+        return true;
+    }
+}
@@ -1,216 +1,635 @@
-/*
- * Copyright (C) 2017 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package io.andromeda.fragments;
-
-import io.andromeda.fragments.types.RouteType;
-import net.sourceforge.cobertura.CoverageIgnore;
-
-import java.nio.file.Path;
-import java.util.Map;
-
-/**
- * Configuration object for Fragments class.
- * @author Alexander Brandt
- */
-public class Configuration {
-    private String extension = ".md";
-    private String domain = "";
-    private String protocol = "https://";
-    private RouteType routeType = RouteType.ARTICLES;
-    private boolean registerOverviewRoute = true;
-    /** Name of the Fragments instance. Used for error messages to aid debugging in case files cannot be loaded
-     * properly and for naming the database table. */
-    private String name;
-    private String urlPath;
-    private Path dataDirectory;
-    private String overviewTemplate;
-    private String defaultTemplate;
-    private int noOfItemsPerPage;
-    private DynamicContext dynamicContext;
-
-    /**
-     * Default Constructor.
-     */
-    @CoverageIgnore
-    private Configuration() {
-
-    }
-
-    /**
-     * Creates a new Configuration instance. The three required parameters are the minimal necessary user-provided
-     * configuration items.
-     * @param name The name of this Fragments instance. It is used for identifying the instance and for creating the
-     *             filename of the database, when it is enabled. In a project each Fragments instance should have a
-     *             unique name.
-     * @param urlPath Path of the base URL. Used for the automatically created routes. Full path will be urlPath/slug.
-     * @param dataDirectory Directory containing the Markdown files.
-     * @param overviewTemplate Template to be used for the overview page, e.g urlPath.
-     * @param defaultTemplate Template to be used for the individual page, e.g. urlPath/slug. Can be overwritten inside
-     *                        the front matter.
-     */
-    public Configuration(String name, String urlPath, Path dataDirectory, String overviewTemplate,
-                         String defaultTemplate, int noOfItemsPerPage){
-        this.name = name;
-        this.urlPath = urlPath;
-        this.dataDirectory = dataDirectory;
-        this.overviewTemplate = overviewTemplate;
-        this.defaultTemplate = defaultTemplate;
-        this.noOfItemsPerPage = noOfItemsPerPage;
-    }
-
-    /********** Getters ***********************************************************************************************/
-
-    /**
-     * Returns the extension of the fragments files of this instance.
-     * @return The extension of the fragments files of this Fragments instance.
-     */
-    public final String getExtension() {
-        return extension;
-    }
-
-    /**
-     * Returns the domain name of this instance.
-     * @return The domain name of this Fragments instance.
-     */
-    public final String getDomain() {
-        return domain;
-    }
-
-    /**
-     * Returns the protocol (http:// or https://) of this instance.
-     * @return The protocol of this Fragments instance.
-     */
-    public final String getProtocol() {
-        return protocol;
-    }
-
-    /**
-     * Returns the RouteType of this instance.
-     * @return The RouteType of this Fragments instance.
-     */
-    public final RouteType getRouteType() {
-        return routeType;
-    }
-
-    public  final boolean registerOverviewRoute() {
-        return registerOverviewRoute;
-    }
-
-    /**
-     * Returns the name of this instance.
-     * @return The name of this Fragments instance.
-     */
-    public final String getName() {
-        return name;
-    }
-
-    /**
-     * Returns the path of the base URL of this instance.
-     * @return The name of this Fragments instance.
-     */
-    public final String getUrlPath() {
-        return urlPath;
-    }
-
-    /**
-     * Returns the directory containing the Markdown files of this instance.
-     * @return The directory containing the Markdown files of this Fragments instance.
-     */
-    public final Path getDataDirectory() {
-        return dataDirectory;
-    }
-
-    /**
-     * Returns the template to be used for the overview page of this instance.
-     * @return The template to be used for the overview page of this Fragments instance.
-     */
-    public final String getOverviewTemplate() {
-        return overviewTemplate;
-    }
-
-    /**
-     * Returns the Template to be used for the individual page of this instance.
-     * @return The Template to be used for the individual page of this Fragments instance.
-     */
-    public final String getDefaultTemplate() {
-        return defaultTemplate;
-    }
-
-    /**
-     * Returns the dynamic context to be used for the fragments.
-     * @return The dynamic context to be used for the fragments.
-     */
-    public final Map<String, Object> getDynamicContext(Map<String, Object> previousContext) {
-        if (dynamicContext != null) {
-            return dynamicContext.getContext(previousContext);
-        } else {
-            return previousContext;
-        }
-
-    }
-
-    /********** Setters ***********************************************************************************************/
-
-    /**
-     * Sets the extension of the fragments files for this Fragments instance. The default one is ".md";
-     * @param extension The new extension.
-     */
-    public final void setExtension(String extension) {
-        this.extension = extension;
-    }
-
-    /**
-     * Sets the domain name for this Fragments instance. It is needed to construct the encoded URL of a Fragment.
-     * @param domain The new domain name.
-     */
-    public final void setDomain(String domain) {
-        this.domain = domain;
-    }
-
-    /**
-     * Sets the protocol for this Fragments instance. The default one is https://.
-     * @param protocol The new protocol.
-     */
-    public final void setProtocol(String protocol) {
-        this.protocol = protocol;
-    }
-
-    /**
-     * Sets the @see RouteType for this Fragments instance. The default one is @RouteType.ARTICLES.
-     * @param routeType The new RouteType.
-     */
-    public final void setRouteType(RouteType routeType) {
-        this.routeType = routeType;
-    }
-
-    /**
-     * If set to true the route for the overview page, e.g. @see Fragments.urlPath, will be registered in Pippo.
-     * Can only be set before creating the Fragments instance!
-     * @param registerOverviewRoute Enables/disables the route for overview page.
-     */
-    public final void setRegisterOverviewRoute(boolean registerOverviewRoute) {
-        this.registerOverviewRoute = registerOverviewRoute;
-    }
-
-    /**
-     * Sets the dynamic context for this Fragments instance.
-     * @param dynamicContext A class implementing the DynamicContext interface.
-     */
-    public final void setDynamicContext(DynamicContext dynamicContext) {
-        this.dynamicContext = dynamicContext;
-    }
-
-}
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import io.andromeda.fragments.types.RouteType;
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration object for Fragments class.
+ * @author Alexander Brandt
+ */
+public class Configuration {
+    private String extension = ".md";
+    private String domain = "";
+    private String protocol = "https://";
+    private RouteType routeType = RouteType.ARTICLES;
+    private boolean registerOverviewRoute = true;
+    /** Name of the Fragments instance. Used for error messages to aid debugging in case files cannot be loaded
+     * properly and for naming the database table. */
+    private String name;
+    private String urlPath;
+    private Path dataDirectory;
+    private String overviewTemplate;
+    private String defaultTemplate;
+    /** The number of Fragments per overview page. If 0 or less, the overview is not paginated. */
+    private int noOfItemsPerPage;
+    /** The maximum number of page links in the pagination of the overview. */
+    private int noOfPagesInPagination = 5;
+    private DynamicContext dynamicContext;
+    /** If true, the Fragment files are loaded in parallel. */
+    private boolean parallelLoading = false;
+    /** Executor used for parallel loading. If null, the common ForkJoinPool is used. */
+    private ExecutorService loadingExecutor;
+    /** If true, the subdirectories of the data directory are scanned, too. */
+    private boolean recursive = false;
+    /** If true, the path of the subdirectory is prepended to the slug when creating the URL of a Fragment. */
+    private boolean urlPrefixFromPath = false;
+    /** Glob patterns of the files to load, relative to the data directory. If empty, all files are loaded. */
+    private List<String> includes = new ArrayList<>();
+    /** Glob patterns of the files and directories to skip, relative to the data directory. */
+    private List<String> excludes = new ArrayList<>();
+    /** The Markdown engine shared by all Fragments of this instance. */
+    private MarkdownEngine markdownEngine = new MarkdownEngine();
+    /** If true, the Markdown of a language is rendered on first access instead of while loading. */
+    private boolean lazyRendering = false;
+    private Path cacheDirectory = null;
+    private boolean watch = false;
+    /** The maximum number of rendered pages in the render cache. If 0, the render cache is disabled. */
+    private int renderCacheSize = 0;
+    /** If true, the pages in the render cache are stored gzip compressed, too. */
+    private boolean precompress = false;
+    /** If true, the pages get an ETag and a Last-Modified header and conditional GET requests are answered. */
+    private boolean conditionalGet = false;
+    /** If true, the routes urlPath/tags/{tag} and urlPath/categories/{category} are registered. */
+    private boolean taxonomyRoutes = false;
+    /** If true, the routes urlPath/yyyy, urlPath/yyyy/mm and urlPath/yyyy/mm/dd of the archive are registered. */
+    private boolean archiveRoutes = false;
+    /** If true, one route serves all Fragments instead of one route per Fragment. */
+    private boolean dispatchRoute = false;
+    private long watchDelay = 200;
+    /** The orders of the Fragments, which are sorted once per snapshot instead of on every request. */
+    private Map<String, Comparator<Fragment>> orders = new LinkedHashMap<>();
+
+    /**
+     * Default Constructor.
+     */
+    @CoverageIgnore
+    private Configuration() {
+
+    }
+
+    /**
+     * Creates a new Configuration instance. The three required parameters are the minimal necessary user-provided
+     * configuration items.
+     * @param name The name of this Fragments instance. It is used for identifying the instance and for creating the
+     *             filename of the database, when it is enabled. In a project each Fragments instance should have a
+     *             unique name.
+     * @param urlPath Path of the base URL. Used for the automatically created routes. Full path will be urlPath/slug.
+     * @param dataDirectory Directory containing the Markdown files.
+     * @param overviewTemplate Template to be used for the overview page, e.g urlPath.
+     * @param defaultTemplate Template to be used for the individual page, e.g. urlPath/slug. Can be overwritten inside
+     *                        the front matter.
+     * @param noOfItemsPerPage The number of Fragments per overview page, e.g. urlPath/page/2. If 0, the overview is
+     *                         not paginated.
+     */
+    public Configuration(String name, String urlPath, Path dataDirectory, String overviewTemplate,
+                         String defaultTemplate, int noOfItemsPerPage){
+        this.name = name;
+        this.urlPath = urlPath;
+        this.dataDirectory = dataDirectory;
+        this.overviewTemplate = overviewTemplate;
+        this.defaultTemplate = defaultTemplate;
+        this.noOfItemsPerPage = noOfItemsPerPage;
+        orders.put("order", Fragments.byOrder);
+        orders.put("title", Fragments.byTitle);
+        orders.put("date", Fragments.byDate);
+    }
+
+    /********** Getters ***********************************************************************************************/
+
+    /**
+     * Returns the extension of the fragments files of this instance.
+     * @return The extension of the fragments files of this Fragments instance.
+     */
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the domain name of this instance.
+     * @return The domain name of this Fragments instance.
+     */
+    public final String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Returns the protocol (http:// or https://) of this instance.
+     * @return The protocol of this Fragments instance.
+     */
+    public final String getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Returns the RouteType of this instance.
+     * @return The RouteType of this Fragments instance.
+     */
+    public final RouteType getRouteType() {
+        return routeType;
+    }
+
+    public  final boolean registerOverviewRoute() {
+        return registerOverviewRoute;
+    }
+
+    /**
+     * Returns the name of this instance.
+     * @return The name of this Fragments instance.
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the path of the base URL of this instance.
+     * @return The name of this Fragments instance.
+     */
+    public final String getUrlPath() {
+        return urlPath;
+    }
+
+    /**
+     * Returns the directory containing the Markdown files of this instance.
+     * @return The directory containing the Markdown files of this Fragments instance.
+     */
+    public final Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Returns the template to be used for the overview page of this instance.
+     * @return The template to be used for the overview page of this Fragments instance.
+     */
+    public final String getOverviewTemplate() {
+        return overviewTemplate;
+    }
+
+    /**
+     * Returns the Template to be used for the individual page of this instance.
+     * @return The Template to be used for the individual page of this Fragments instance.
+     */
+    public final String getDefaultTemplate() {
+        return defaultTemplate;
+    }
+
+    /**
+     * Returns the maximum number of rendered pages in the render cache of this instance.
+     * @return The maximum number of rendered pages, 0 if the render cache is disabled.
+     */
+    public final int getRenderCacheSize() {
+        return renderCacheSize;
+    }
+
+    /**
+     * Returns true, if the pages in the render cache of this instance are stored gzip compressed, too.
+     * @return True, if the pages in the render cache are stored gzip compressed, too.
+     */
+    public final boolean getPrecompress() {
+        return precompress;
+    }
+
+    /**
+     * Returns true, if the pages of this instance support conditional GET requests.
+     * @return True, if the pages of this Fragments instance support conditional GET requests.
+     */
+    public final boolean getConditionalGet() {
+        return conditionalGet;
+    }
+
+    /**
+     * Returns true, if the routes of the tag and category pages of this instance are registered.
+     * @return True, if the routes of the tag and category pages of this Fragments instance are registered.
+     */
+    public final boolean getTaxonomyRoutes() {
+        return taxonomyRoutes;
+    }
+
+    /**
+     * Returns true, if the archive routes of this instance are registered.
+     * @return True, if the archive routes of this Fragments instance are registered.
+     */
+    public final boolean getArchiveRoutes() {
+        return archiveRoutes;
+    }
+
+    /**
+     * Returns true, if one route serves all Fragments of this instance.
+     * @return True, if one route serves all Fragments of this Fragments instance.
+     */
+    public final boolean getDispatchRoute() {
+        return dispatchRoute;
+    }
+
+    /**
+     * Returns the number of Fragments per overview page of this instance.
+     * @return The number of Fragments per overview page, 0 or less if the overview is not paginated.
+     */
+    public final int getNoOfItemsPerPage() {
+        return noOfItemsPerPage;
+    }
+
+    /**
+     * Returns the maximum number of page links in the pagination of the overview.
+     * @return The maximum number of page links in the pagination of the overview.
+     */
+    public final int getNoOfPagesInPagination() {
+        return noOfPagesInPagination;
+    }
+
+    /**
+     * Returns the dynamic context to be used for the fragments.
+     * @return The dynamic context to be used for the fragments.
+     */
+    public final Map<String, Object> getDynamicContext(Map<String, Object> previousContext) {
+        if (dynamicContext != null) {
+            return dynamicContext.getContext(previousContext);
+        } else {
+            return previousContext;
+        }
+
+    }
+
+    /**
+     * Returns true, if the Fragment files of this instance are loaded in parallel.
+     * @return True, if the Fragment files of this Fragments instance are loaded in parallel.
+     */
+    public final boolean getParallelLoading() {
+        return parallelLoading;
+    }
+
+    /**
+     * Returns the executor used for loading the Fragment files in parallel.
+     * @return The executor used for parallel loading or null, if the common ForkJoinPool is used.
+     */
+    public final ExecutorService getLoadingExecutor() {
+        return loadingExecutor;
+    }
+
+    /**
+     * Returns true, if the subdirectories of the data directory are scanned, too.
+     * @return True, if the data directory of this Fragments instance is scanned recursively.
+     */
+    public final boolean getRecursive() {
+        return recursive;
+    }
+
+    /**
+     * Returns true, if the path of the subdirectory is part of the URL of a Fragment.
+     * @return True, if the path of the subdirectory is part of the URL of a Fragment.
+     */
+    public final boolean getUrlPrefixFromPath() {
+        return urlPrefixFromPath;
+    }
+
+    /**
+     * Returns the glob patterns of the files to load.
+     * @return The glob patterns of the files to load of this Fragments instance.
+     */
+    public final List<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Returns the glob patterns of the files and directories to skip.
+     * @return The glob patterns of the files and directories to skip of this Fragments instance.
+     */
+    public final List<String> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Returns the Markdown engine shared by all Fragments of this instance.
+     * @return The Markdown engine of this Fragments instance.
+     */
+    public final MarkdownEngine getMarkdownEngine() {
+        return markdownEngine;
+    }
+
+    /**
+     * Returns true, if the content of the Fragments is rendered on first access.
+     * @return True, if the content of the Fragments of this instance is rendered on first access.
+     */
+    public final boolean getLazyRendering() {
+        return lazyRendering;
+    }
+
+    /**
+     * Returns the directory of the cache of the compiled Fragments or null, if the cache is disabled.
+     * @return The directory of the cache of the compiled Fragments of this Fragments instance.
+     */
+    public final Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Returns true, if the data directory is watched for changes.
+     * @return True, if the data directory of this Fragments instance is watched for changes.
+     */
+    public final boolean getWatch() {
+        return watch;
+    }
+
+    /**
+     * Returns the time without further changes, before changed files are reloaded in watch mode.
+     * @return The delay in milliseconds.
+     */
+    public final long getWatchDelay() {
+        return watchDelay;
+    }
+
+    /**
+     * Returns the registered orders of the Fragments with their names as key.
+     * @return The unmodifiable map of the orders of this Fragments instance.
+     */
+    public final Map<String, Comparator<Fragment>> getOrders() {
+        return Collections.unmodifiableMap(orders);
+    }
+
+    /********** Setters ***********************************************************************************************/
+
+    /**
+     * Sets the extension of the fragments files for this Fragments instance. The default one is ".md";
+     * @param extension The new extension.
+     */
+    public final void setExtension(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Sets the domain name for this Fragments instance. It is needed to construct the encoded URL of a Fragment.
+     * @param domain The new domain name.
+     */
+    public final void setDomain(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Sets the protocol for this Fragments instance. The default one is https://.
+     * @param protocol The new protocol.
+     */
+    public final void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Sets the @see RouteType for this Fragments instance. The default one is @RouteType.ARTICLES.
+     * @param routeType The new RouteType.
+     */
+    public final void setRouteType(RouteType routeType) {
+        this.routeType = routeType;
+    }
+
+    /**
+     * If set to true the route for the overview page, e.g. @see Fragments.urlPath, will be registered in Pippo.
+     * Can only be set before creating the Fragments instance!
+     * @param registerOverviewRoute Enables/disables the route for overview page.
+     */
+    public final void setRegisterOverviewRoute(boolean registerOverviewRoute) {
+        this.registerOverviewRoute = registerOverviewRoute;
+    }
+
+    /**
+     * Returns true, if a dynamic context is set.
+     * @return True, if a dynamic context is set.
+     */
+    final boolean hasDynamicContext() {
+        return dynamicContext != null;
+    }
+
+    /**
+     * Sets the dynamic context for this Fragments instance.
+     * @param dynamicContext A class implementing the DynamicContext interface.
+     */
+    public final void setDynamicContext(DynamicContext dynamicContext) {
+        this.dynamicContext = dynamicContext;
+    }
+
+    /**
+     * Enables/disables the parallel loading of the Fragment files. Reading, front matter parsing and Markdown rendering
+     * of the individual files is then distributed over the loading executor. The order of the Fragments does not depend
+     * on this setting. Can only be set before creating the Fragments instance!
+     * @param parallelLoading Enables/disables the parallel loading.
+     */
+    public final void setParallelLoading(boolean parallelLoading) {
+        this.parallelLoading = parallelLoading;
+    }
+
+    /**
+     * Sets the executor used for parallel loading. If it is not set, the common ForkJoinPool is used. The executor is
+     * not shut down by Fragments.
+     * @param loadingExecutor The executor used for parallel loading.
+     */
+    public final void setLoadingExecutor(ExecutorService loadingExecutor) {
+        this.loadingExecutor = loadingExecutor;
+    }
+
+    /**
+     * Enables/disables scanning the subdirectories of the data directory. With parallel loading enabled, the
+     * subdirectories are scanned in parallel, too. Can only be set before creating the Fragments instance!
+     * @param recursive Enables/disables the recursive scanning.
+     */
+    public final void setRecursive(boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    /**
+     * If set to true, the path of the subdirectory (relative to the data directory) is prepended to the slug, e.g. the
+     * file guides/java/intro.md gets the URL urlPath/guides/java/intro. Each directory name is converted like a slug.
+     * @param urlPrefixFromPath Enables/disables the URL prefix.
+     */
+    public final void setUrlPrefixFromPath(boolean urlPrefixFromPath) {
+        this.urlPrefixFromPath = urlPrefixFromPath;
+    }
+
+    /**
+     * Sets the glob patterns of the files to load, e.g. "guides/**". The patterns are matched against the path relative
+     * to the data directory. If no pattern is set, all files with the configured extension are loaded.
+     * @param includes The glob patterns of the files to load.
+     */
+    public final void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+
+    /**
+     * Sets the glob patterns of the files and directories to skip, e.g. "drafts" or "*.draft.md". The patterns are
+     * matched against the path relative to the data directory. Excluded directories are not scanned at all.
+     * @param excludes The glob patterns of the files and directories to skip.
+     */
+    public final void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
+
+    /**
+     * Sets the Markdown engine shared by all Fragments of this instance. Use it to configure other flexmark
+     * extensions, e.g. new MarkdownEngine(Arrays.asList(TablesExtension.create(), StrikethroughExtension.create())).
+     * Can only be set before creating the Fragments instance!
+     * @param markdownEngine The new Markdown engine.
+     */
+    public final void setMarkdownEngine(MarkdownEngine markdownEngine) {
+        this.markdownEngine = markdownEngine;
+    }
+
+    /**
+     * Enables/disables lazy rendering. When enabled, only the Markdown source of each language is kept while loading
+     * and it is rendered on first access, e.g. when a route of the Fragment is requested in this language. Loading time
+     * and memory then depend on the languages actually requested. Can only be set before creating the Fragments
+     * instance!
+     * @param lazyRendering Enables/disables lazy rendering.
+     */
+    public final void setLazyRendering(boolean lazyRendering) {
+        this.lazyRendering = lazyRendering;
+    }
+
+    /**
+     * Sets the directory of the cache of the compiled Fragments. When set, the parsed front matter and the rendered
+     * content of every Fragment are stored in the file "fragments_&lt;name&gt;.cache" in this directory, and unchanged
+     * files are taken from it on the next start instead of parsing and rendering them again. The default is null
+     * (no cache). Can only be set before creating the Fragments instance!
+     * @param cacheDirectory The directory of the cache or null to disable the cache.
+     */
+    public final void setCacheDirectory(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Enables/disables watch mode. When enabled, the data directory is watched for changes and changed, new and deleted
+     * files are applied without restarting the application. Only the changed files are loaded again. Use
+     * Fragments.close() to stop watching. Can only be set before creating the Fragments instance!
+     * @param watch Enables/disables watch mode.
+     */
+    public final void setWatch(boolean watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * Sets the time without further changes, before the changed files are reloaded in watch mode. All changes within
+     * this time are applied together, e.g. the several events of saving a file in an editor. The default is 200 ms.
+     * @param watchDelay The delay in milliseconds.
+     */
+    public final void setWatchDelay(long watchDelay) {
+        this.watchDelay = watchDelay;
+    }
+
+    /**
+     * Sets the maximum number of rendered pages in the render cache. If greater than 0, the page of a Fragment is
+     * rendered only once per language and template and then served from the cache, the least recently used pages are
+     * removed first. The cached pages are shared by all requests, so they must not depend on the request: the locals of
+     * the response and the session are not available. The render cache is not used, if a dynamic context is set or the
+     * database is enabled, their values ("number_of_clicks", "top_fragments", ...) change with every request. Fragments
+     * with "cache: false" in the front matter are never cached. The cache is invalidated when the Fragments or the
+     * default context change, see also Fragments.invalidatePages(). Can only be set before creating the Fragments
+     * instance!
+     * @param renderCacheSize The maximum number of rendered pages, 0 disables the render cache.
+     */
+    public final void setRenderCacheSize(int renderCacheSize) {
+        this.renderCacheSize = renderCacheSize;
+    }
+
+    /**
+     * Enables/disables precompressed pages. When enabled, each page put into the render cache is compressed once with
+     * gzip and sent compressed to clients accepting gzip, so requests neither render nor compress it. Only used, when
+     * the render cache is enabled (see setRenderCacheSize()). When Pippo's GZipFilter is used, the uncompressed page is
+     * sent to avoid compressing it twice.
+     * @param precompress Enables/disables precompressed pages.
+     */
+    public final void setPrecompress(boolean precompress) {
+        this.precompress = precompress;
+    }
+
+    /**
+     * Enables/disables conditional GET requests. When enabled, the pages of the Fragments and the overview get an ETag
+     * and a Last-Modified header. Requests with a matching If-None-Match or If-Modified-Since header get "304 Not
+     * Modified" without rendering the page (the click is counted anyway). The validators change, when the Fragments or
+     * the default context change (see Fragments.invalidatePages()), so like for the render cache, the pages must not
+     * depend on the request. Fragments with "cache: false" in the front matter get no validators.
+     * @param conditionalGet Enables/disables conditional GET requests.
+     */
+    public final void setConditionalGet(boolean conditionalGet) {
+        this.conditionalGet = conditionalGet;
+    }
+
+    /**
+     * Enables/disables the routes urlPath/tags/{tag} and urlPath/categories/{category} (and urlPath/tags/{tag}/page/{n}
+     * etc., if noOfItemsPerPage is greater than 0). They render the overview template with the visible Fragments of the
+     * tag or category. Can only be set before creating the Fragments instance!
+     * @param taxonomyRoutes Enables/disables the routes of the tag and category pages.
+     */
+    public final void setTaxonomyRoutes(boolean taxonomyRoutes) {
+        this.taxonomyRoutes = taxonomyRoutes;
+    }
+
+    /**
+     * Enables/disables the archive routes urlPath/yyyy, urlPath/yyyy/mm and urlPath/yyyy/mm/dd. They render the
+     * overview template with the visible Fragments of the year, month or day, see FragmentsSnapshot.getArchive(). Can
+     * only be set before creating the Fragments instance!
+     * @param archiveRoutes Enables/disables the archive routes.
+     */
+    public final void setArchiveRoutes(boolean archiveRoutes) {
+        this.archiveRoutes = archiveRoutes;
+    }
+
+    /**
+     * Enables/disables the dispatch route. When enabled, one parameterized route per instance (e.g. urlPath/{slug} or
+     * urlPath/{yyyy}/{mm}/{dd}/{slug}) serves all Fragments, which are looked up by their URL. This keeps the router
+     * small for many Fragments. Always enabled in watch mode. Can only be set before creating the Fragments instance!
+     * @param dispatchRoute Enables/disables the dispatch route.
+     */
+    public final void setDispatchRoute(boolean dispatchRoute) {
+        this.dispatchRoute = dispatchRoute;
+    }
+
+    /**
+     * Sets the number of Fragments per overview page. If greater than 0, the overview route shows the first page and
+     * the pages are available as urlPath/page/&lt;number&gt;. Can only be set before creating the Fragments instance!
+     * @param noOfItemsPerPage The number of Fragments per overview page, 0 disables the pagination.
+     */
+    public final void setNoOfItemsPerPage(int noOfItemsPerPage) {
+        this.noOfItemsPerPage = noOfItemsPerPage;
+    }
+
+    /**
+     * Sets the maximum number of page links in the pagination of the overview, see Utilities.calculatePagination().
+     * The default is 5.
+     * @param noOfPagesInPagination The maximum number of page links.
+     */
+    public final void setNoOfPagesInPagination(int noOfPagesInPagination) {
+        this.noOfPagesInPagination = noOfPagesInPagination;
+    }
+
+    /**
+     * Registers an order of the Fragments. The Fragments are sorted once in each registered order after loading (and
+     * after each change in watch mode), so requesting them in this order does not sort them again. The templates get
+     * the visible Fragments in this order as "fragments_ordered_by_&lt;name&gt;". The orders "order", "title" and
+     * "date" are registered by default. Can only be set before creating the Fragments instance!
+     * @param name The name of the order.
+     * @param comparator The comparator defining the order.
+     */
+    public final void addOrder(String name, Comparator<Fragment> comparator) {
+        orders.put(name, comparator);
+    }
+
+}
@@ -34,6 +34,7 @@ public class Constants {
     public static final String DATE_ID = "date";
     public static final String TAGS_ID = "tags";
     public static final String CATEGORIES_ID = "categories";
+    public static final String CACHE_ID = "cache";
 
     @CoverageIgnore
     private Constants() {
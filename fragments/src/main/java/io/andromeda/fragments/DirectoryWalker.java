@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Collects the Fragment files of a data directory. When the walk is recursive, every subdirectory is handled by its own
+ * task, so large trees are scanned in parallel when the walker is invoked inside a ForkJoinPool. Directories matching
+ * one of the exclude patterns are not visited at all. Symbolic links to directories are not followed.
+ * @author Alexander Brandt
+ */
+class DirectoryWalker extends RecursiveTask<List<Path>> {
+    private static final long serialVersionUID = 1L;
+    /** The logger instance for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryWalker.class);
+
+    private final Path root;
+    private final Path directory;
+    private final String extension;
+    private final boolean recursive;
+    private final boolean parallel;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+
+    /**
+     * Creates a walker for the data directory of the given configuration.
+     * @param root The data directory.
+     * @param configuration The configuration holding the extension, the recursive flag and the include/exclude globs.
+     * @param parallel If true, the subdirectories are forked as separate tasks.
+     */
+    DirectoryWalker(Path root, Configuration configuration, boolean parallel) {
+        this(root, root, configuration.getExtension(), configuration.getRecursive(), parallel,
+                toMatchers(configuration.getIncludes()), toMatchers(configuration.getExcludes()));
+    }
+
+    private DirectoryWalker(Path root, Path directory, String extension, boolean recursive, boolean parallel,
+                            List<PathMatcher> includes, List<PathMatcher> excludes) {
+        this.root = root;
+        this.directory = directory;
+        this.extension = extension;
+        this.recursive = recursive;
+        this.parallel = parallel;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    @Override
+    protected List<Path> compute() {
+        List<Path> result = new ArrayList<>();
+        List<DirectoryWalker> subdirectories = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+            for (Path path : directoryStream) {
+                Path relative = root.relativize(path);
+                if (matchesAny(excludes, relative)) {
+                    continue;
+                }
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (recursive) {
+                        DirectoryWalker walker = new DirectoryWalker(root, path, extension, true, parallel, includes,
+                                excludes);
+                        if (parallel) {
+                            walker.fork();
+                        }
+                        subdirectories.add(walker);
+                    }
+                } else if (path.toString().toLowerCase().endsWith(extension)
+                        && (includes.isEmpty() || matchesAny(includes, relative))) {
+                    result.add(path.normalize());
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Error reading directory (\"{}\"): {}", directory, ex);
+        }
+        for (DirectoryWalker walker : subdirectories) {
+            if (parallel) {
+                result.addAll(walker.join());
+            } else {
+                result.addAll(walker.invoke());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a walker for a subdirectory of the data directory with the same settings as this walker.
+     * @param directory The subdirectory.
+     * @return The walker for the subdirectory.
+     */
+    DirectoryWalker forDirectory(Path directory) {
+        return new DirectoryWalker(root, directory, extension, recursive, parallel, includes, excludes);
+    }
+
+    /**
+     * Returns true, if the given file is a Fragment file of this walk, e.g. for a file reported by the
+     * FragmentsWatcher. The file does not have to exist.
+     * @param path The file, located inside the data directory.
+     * @return True, if the file would be collected by this walker.
+     */
+    boolean accepts(Path path) {
+        Path relative = root.relativize(path);
+        if (relative.getNameCount() > 1 && !recursive) {
+            return false;
+        }
+        for (int i = 1; i < relative.getNameCount(); i++) {
+            if (matchesAny(excludes, relative.subpath(0, i))) {
+                return false;
+            }
+        }
+        return !matchesAny(excludes, relative) && path.toString().toLowerCase().endsWith(extension)
+                && (includes.isEmpty() || matchesAny(includes, relative));
+    }
+
+    /**
+     * Returns true, if the given directory is visited by this walker.
+     * @param path The directory, located inside the data directory.
+     * @return True, if the directory is visited by this walker.
+     */
+    boolean acceptsDirectory(Path path) {
+        Path relative = root.relativize(path);
+        if (relative.toString().isEmpty()) {
+            return true;
+        }
+        if (!recursive) {
+            return false;
+        }
+        for (int i = 1; i <= relative.getNameCount(); i++) {
+            if (matchesAny(excludes, relative.subpath(0, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> toMatchers(List<String> globs) {
+        List<PathMatcher> result = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs) {
+                result.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import io.andromeda.fragments.types.FrontMatterType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of the compiled state of the Fragments of one Configuration: the parsed front matter and the Markdown
+ * and rendered HTML, preview and text only preview of every language. Derived values like the slug, the URL and the
+ * date are computed again from the cached front matter, because they depend on the Configuration.
+ *
+ * An entry is used, if the size and the modification time of the file are unchanged. Otherwise the SHA-256 hash of the
+ * content decides, so files touched by a deployment without changing the content are still taken from the cache. The
+ * whole cache is discarded, if the configuration of the MarkdownEngine has changed.
+ *
+ * The compiled state is written in a plain data format and not with Java serialization, so reading a cache file never
+ * creates objects of arbitrary classes.
+ * @author Alexander Brandt
+ */
+class FragmentCache {
+    /** The logger instance for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FragmentCache.class);
+
+    /** Increased whenever the format of the cache file or of the cached state changes. */
+    private static final int VERSION = 2;
+
+    private final Path file;
+    private final String engineHash;
+    /** The entries read from the cache file. */
+    private final Map<String, Entry> previous = new ConcurrentHashMap<>();
+    /** The entries of the currently loaded files, written by save(). */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache and reads the existing cache file, if there is one.
+     * @param file The cache file.
+     * @param engineHash The configuration hash of the MarkdownEngine, see MarkdownEngine.getConfigurationHash().
+     */
+    FragmentCache(Path file, String engineHash) {
+        this.file = file;
+        this.engineHash = engineHash;
+        read();
+    }
+
+    private void read() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION || !engineHash.equals(in.readUTF())) {
+                LOGGER.info("Fragment cache \"{}\" is outdated, all files are compiled again.", file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(in);
+                previous.put(entry.path, entry);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error reading fragment cache \"{}\", all files are compiled again: {}", file, e.toString());
+            previous.clear();
+        }
+    }
+
+    /**
+     * Returns the cached state of a file, if its size and modification time are unchanged.
+     * @param path The file of the Fragment.
+     * @param defaultLanguage The default language used for splitting the languages.
+     * @return The cached state or null, if the file has to be compiled.
+     */
+    CompiledFragment get(Path path, String defaultLanguage) throws IOException {
+        Entry entry = previous.get(key(path));
+        if (entry == null || !entry.defaultLanguage.equals(defaultLanguage)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (entry.size != attributes.size() || entry.lastModified != attributes.lastModifiedTime().toMillis()) {
+            return null;
+        }
+        current.put(entry.path, entry);
+        return entry.toCompiledFragment();
+    }
+
+    /**
+     * Returns the cached state of a file, if its content is unchanged.
+     * @param path The file of the Fragment.
+     * @param defaultLanguage The default language used for splitting the languages.
+     * @param contentHash The hash of the content of the file, see hash().
+     * @return The cached state or null, if the file has to be compiled.
+     */
+    CompiledFragment get(Path path, String defaultLanguage, String contentHash) throws IOException {
+        Entry entry = previous.get(key(path));
+        if (entry == null || !entry.defaultLanguage.equals(defaultLanguage) || !entry.hash.equals(contentHash)) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry touched = new Entry(entry.path, attributes.size(), attributes.lastModifiedTime().toMillis(), entry.hash,
+                entry.defaultLanguage, entry.data);
+        current.put(touched.path, touched);
+        return entry.toCompiledFragment();
+    }
+
+    /**
+     * Stores the compiled state of a file. The state is serialized immediately, later changes of the Fragment are not
+     * taken into account.
+     * @param path The file of the Fragment.
+     * @param defaultLanguage The default language used for splitting the languages.
+     * @param contentHash The hash of the content of the file, see hash().
+     * @param compiled The compiled state.
+     */
+    void put(Path path, String defaultLanguage, String contentHash, CompiledFragment compiled) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                compiled.write(out);
+            }
+            Entry entry = new Entry(key(path), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    contentHash, defaultLanguage, bytes.toByteArray());
+            current.put(entry.path, entry);
+        } catch (IOException e) {
+            // e.g. a front matter value of an unsupported type
+            LOGGER.warn("Fragment \"{}\" cannot be cached: {}", path, e.toString());
+        }
+    }
+
+    /**
+     * Removes the entry of a file, e.g. because the file was deleted.
+     * @param path The file of the Fragment.
+     */
+    void remove(Path path) {
+        current.remove(key(path));
+    }
+
+    /**
+     * Writes the entries of all files loaded since the creation of the cache into the cache file. Entries of files,
+     * which were not loaded (e.g. deleted files), are dropped. The file is replaced atomically, so a crash while
+     * writing never leaves a corrupt cache behind.
+     */
+    void save() {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeUTF(engineHash);
+                Map<String, Entry> entries = new LinkedHashMap<>(current);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    entry.write(out);
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Error writing fragment cache \"{}\": {}", file, e.toString());
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 hash of the given bytes.
+     * @param content The bytes.
+     * @return The hex encoded hash.
+     */
+    static String hash(byte[] content) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is supported by every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One cache entry: the key of the file and its serialized compiled state.
+     */
+    private static final class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final String defaultLanguage;
+        private final byte[] data;
+
+        private Entry(String path, long size, long lastModified, String hash, String defaultLanguage, byte[] data) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.defaultLanguage = defaultLanguage;
+            this.data = data;
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            String path = in.readUTF();
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            String hash = in.readUTF();
+            String defaultLanguage = in.readUTF();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Entry(path, size, lastModified, hash, defaultLanguage, data);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeUTF(hash);
+            out.writeUTF(defaultLanguage);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+
+        private CompiledFragment toCompiledFragment() throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+                CompiledFragment compiled = CompiledFragment.read(in);
+                compiled.contentHash = hash;
+                return compiled;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid cache entry: " + path, e);
+            }
+        }
+    }
+
+    /**
+     * The compiled state of a Fragment. The HTML values of a language are null, if the language was not rendered yet
+     * (lazy rendering). The front matter may contain strings, numbers, booleans, dates, lists and maps, which is
+     * everything the YAML and JSON parsers return.
+     */
+    static final class CompiledFragment {
+        private static final byte NULL = 0;
+        private static final byte STRING = 1;
+        private static final byte BOOLEAN = 2;
+        private static final byte INTEGER = 3;
+        private static final byte LONG = 4;
+        private static final byte DOUBLE = 5;
+        private static final byte BIG_INTEGER = 6;
+        private static final byte BIG_DECIMAL = 7;
+        private static final byte DATE = 8;
+        private static final byte LIST = 9;
+        private static final byte MAP = 10;
+
+        final FrontMatterType frontMatterType;
+        final Map<String, Object> frontMatter;
+        final Map<String, String[]> languages = new LinkedHashMap<>();
+        /** The hash of the content of the file, set when read from the cache. */
+        String contentHash;
+
+        CompiledFragment(FrontMatterType frontMatterType, Map<String, Object> frontMatter) {
+            this.frontMatterType = frontMatterType;
+            this.frontMatter = frontMatter;
+        }
+
+        /**
+         * Adds the content of one language.
+         * @param language The language.
+         * @param markdown The Markdown source.
+         * @param html The HTML or null, if not rendered.
+         * @param preview The preview or null, if not rendered.
+         * @param previewTextOnly The text only preview or null, if not rendered.
+         */
+        void addLanguage(String language, String markdown, String html, String preview, String previewTextOnly) {
+            languages.put(language, new String[] {markdown, html, preview, previewTextOnly});
+        }
+
+        /**
+         * Writes the compiled state.
+         * @param out The output.
+         * @throws IOException If writing fails or the front matter contains a value of an unsupported type.
+         */
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, frontMatterType == null ? null : frontMatterType.name());
+            writeValue(out, frontMatter);
+            out.writeInt(languages.size());
+            for (Map.Entry<String, String[]> language : languages.entrySet()) {
+                writeString(out, language.getKey());
+                for (String value : language.getValue()) {
+                    writeString(out, value);
+                }
+            }
+        }
+
+        /**
+         * Reads the compiled state written by write().
+         * @param in The input.
+         * @return The compiled state.
+         * @throws IOException If reading fails or the data is invalid.
+         */
+        @SuppressWarnings("unchecked")
+        static CompiledFragment read(DataInputStream in) throws IOException {
+            String type = readString(in);
+            Object frontMatter = readValue(in);
+            if (frontMatter != null && !(frontMatter instanceof Map)) {
+                throw new IOException("Invalid front matter");
+            }
+            CompiledFragment compiled = new CompiledFragment(type == null ? null : FrontMatterType.valueOf(type),
+                    (Map<String, Object>) frontMatter);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                compiled.addLanguage(readString(in), readString(in), readString(in), readString(in), readString(in));
+            }
+            return compiled;
+        }
+
+        /** Writes a string of any length (writeUTF is limited to 64 KB) or null. */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static void writeValue(DataOutputStream out, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof BigInteger) {
+                out.writeByte(BIG_INTEGER);
+                writeString(out, value.toString());
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(BIG_DECIMAL);
+                writeString(out, value.toString());
+            } else if (value instanceof Date) {
+                out.writeByte(DATE);
+                out.writeLong(((Date) value).getTime());
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                out.writeByte(LIST);
+                out.writeInt(list.size());
+                for (Object item : list) {
+                    writeValue(out, item);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(MAP);
+                out.writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(out, String.valueOf(entry.getKey()));
+                    writeValue(out, entry.getValue());
+                }
+            } else {
+                throw new IOException("Unsupported front matter value: " + value.getClass().getName());
+            }
+        }
+
+        private static Object readValue(DataInputStream in) throws IOException {
+            byte type = in.readByte();
+            switch (type) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString(in);
+                case BOOLEAN:
+                    return in.readBoolean();
+                case INTEGER:
+                    return in.readInt();
+                case LONG:
+                    return in.readLong();
+                case DOUBLE:
+                    return in.readDouble();
+                case BIG_INTEGER:
+                    return new BigInteger(readString(in));
+                case BIG_DECIMAL:
+                    return new BigDecimal(readString(in));
+                case DATE:
+                    return new Date(in.readLong());
+                case LIST:
+                    int size = in.readInt();
+                    List<Object> list = new ArrayList<>(Math.max(0, Math.min(size, 1024)));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue(in));
+                    }
+                    return list;
+                case MAP:
+                    int entries = in.readInt();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < entries; i++) {
+                        map.put(readString(in), readValue(in));
+                    }
+                    return map;
+                default:
+                    throw new IOException("Invalid front matter value type: " + type);
+            }
+        }
+    }
+}
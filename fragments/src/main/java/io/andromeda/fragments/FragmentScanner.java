@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import io.andromeda.fragments.types.FrontMatterType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits the UTF-8 encoded content of a Fragment file into the front matter and the content sections of the different
+ * languages in one pass. The lines are not copied, only the front matter and the sections are extracted as strings.
+ *
+ * The front matter starts with the first non empty line, which is either at least three dashes (YAML) or at least
+ * three opening curly braces (JSON). It ends with a line equal to the opening line (YAML) or "}}}" (JSON). Language
+ * sections are separated by lines "--- xx ---" or "--- xx-yy ---". Line endings can be "\n" or "\r\n".
+ * @author Alexander Brandt
+ */
+class FragmentScanner {
+    private static final String JSON_DELIMITER = "}}}";
+
+    private final String text;
+    private final int length;
+    private boolean empty = false;
+    private boolean frontMatterClosed = false;
+    private FrontMatterType frontMatterType;
+    private String frontMatter;
+    private final Map<String, String> sections = new LinkedHashMap<>();
+
+    /**
+     * Scans the content of a Fragment file.
+     * @param bytes The UTF-8 encoded content of the file.
+     * @param defaultLanguage The language of the content before the first language separator.
+     */
+    FragmentScanner(byte[] bytes, String defaultLanguage) {
+        String decoded = new String(bytes, StandardCharsets.UTF_8);
+        // Skip the byte order mark
+        if (!decoded.isEmpty() && decoded.charAt(0) == '\uFEFF') {
+            decoded = decoded.substring(1);
+        }
+        this.text = decoded;
+        this.length = decoded.length();
+        scan(defaultLanguage);
+    }
+
+    private void scan(String defaultLanguage) {
+        // Skip empty lines in front of the front matter
+        int start = 0;
+        int end = lineEnd(start);
+        while (contentEnd(start, end) == start) {
+            if (end >= length) {
+                empty = true;
+                return;
+            }
+            start = end + 1;
+            end = lineEnd(start);
+        }
+
+        int contentEnd = contentEnd(start, end);
+        String delimiter;
+        if (consistsOf(start, contentEnd, '-')) {
+            frontMatterType = FrontMatterType.YAML;
+            delimiter = text.substring(start, contentEnd);
+        } else if (consistsOf(start, contentEnd, '{')) {
+            frontMatterType = FrontMatterType.JSON;
+            delimiter = JSON_DELIMITER;
+        } else {
+            return;
+        }
+
+        int frontMatterStart = end + 1;
+        int position = frontMatterStart;
+        while (position < length) {
+            end = lineEnd(position);
+            contentEnd = contentEnd(position, end);
+            if (contentEnd - position == delimiter.length() && text.startsWith(delimiter, position)) {
+                frontMatter = normalize(text.substring(frontMatterStart, position));
+                frontMatterClosed = true;
+                scanSections(Math.min(end + 1, length), defaultLanguage);
+                return;
+            }
+            position = end + 1;
+        }
+    }
+
+    private void scanSections(int start, String defaultLanguage) {
+        String language = defaultLanguage;
+        int sectionStart = start;
+        int position = start;
+        while (position < length) {
+            int end = lineEnd(position);
+            String marker = languageMarker(position, contentEnd(position, end));
+            if (marker != null) {
+                sections.put(language, normalize(text.substring(sectionStart, position)));
+                language = marker;
+                sectionStart = Math.min(end + 1, length);
+            }
+            position = end + 1;
+        }
+        sections.put(language, normalize(text.substring(sectionStart, length)));
+    }
+
+    /**
+     * Returns the language of a separator line "--- xx ---" or "--- xx-yy ---" or null, if the line is no separator.
+     */
+    private String languageMarker(int start, int end) {
+        int lineLength = end - start;
+        if ((lineLength != 10 && lineLength != 13) || !text.startsWith("--- ", start)
+                || !text.startsWith(" ---", end - 4)) {
+            return null;
+        }
+        int idStart = start + 4;
+        if (!isWordChar(text.charAt(idStart)) || !isWordChar(text.charAt(idStart + 1))) {
+            return null;
+        }
+        if (lineLength == 13 && (text.charAt(idStart + 2) != '-' || !isWordChar(text.charAt(idStart + 3))
+                || !isWordChar(text.charAt(idStart + 4)))) {
+            return null;
+        }
+        return text.substring(idStart, end - 4);
+    }
+
+    /** Returns the index of the line feed ending the line starting at start or the length of the text. */
+    private int lineEnd(int start) {
+        int end = text.indexOf('\n', start);
+        return end < 0 ? length : end;
+    }
+
+    /** Returns the end of the line content, excluding a carriage return. */
+    private int contentEnd(int start, int end) {
+        if (end > start && text.charAt(end - 1) == '\r') {
+            return end - 1;
+        }
+        return end;
+    }
+
+    private boolean consistsOf(int start, int end, char c) {
+        if (end - start < 3) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Same as the regular expression \w. */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static String normalize(String value) {
+        if (value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\r\n", "\n");
+    }
+
+    /**
+     * Returns true, if the file contains only empty lines.
+     * @return True, if the file contains only empty lines.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Returns the type of the front matter or null, if the file does not start with a front matter.
+     * @return The type of the front matter.
+     */
+    FrontMatterType getFrontMatterType() {
+        return frontMatterType;
+    }
+
+    /**
+     * Returns true, if the closing delimiter of the front matter was found.
+     * @return True, if the closing delimiter of the front matter was found.
+     */
+    boolean isFrontMatterClosed() {
+        return frontMatterClosed;
+    }
+
+    /**
+     * Returns the front matter without the delimiters.
+     * @return The front matter without the delimiters.
+     */
+    String getFrontMatter() {
+        return frontMatter;
+    }
+
+    /**
+     * Returns the Markdown content sections in the order of the file, with the language as key.
+     * @return The Markdown content sections.
+     */
+    Map<String, String> getSections() {
+        return sections;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import io.andromeda.fragments.types.FrontMatterType;
+
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only view of a Fragment in one language. Unlike Fragment.update(), which switches the language of the shared
+ * Fragment, a view never changes, so any number of requests in different languages can use the views of the same
+ * Fragment at the same time. The views are created once per Fragment and language, see Fragment.getView(). The
+ * getters have the same names as the ones of Fragment, so templates can use both.
+ * @author Alexander Brandt
+ */
+public final class FragmentView {
+    private final Fragment fragment;
+    private final String language;
+    private final LanguageContent content;
+
+    /**
+     * Creates the view.
+     * @param fragment The Fragment.
+     * @param language The language of the content or null, if the Fragment has no content for any requested language.
+     * @param content The content in this language.
+     */
+    FragmentView(Fragment fragment, String language, LanguageContent content) {
+        this.fragment = fragment;
+        this.language = language;
+        this.content = content;
+    }
+
+    /**
+     * Returns the Fragment of this view.
+     * @return The Fragment of this view.
+     */
+    public Fragment getFragment() {
+        return fragment;
+    }
+
+    /**
+     * Returns the language of this view. This is the default language of the Fragment, if the Fragment has no content
+     * in the requested language.
+     * @return The language of this view.
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Returns the content in the language of this view.
+     * @return The content in the language of this view.
+     */
+    public String getContent() {
+        return content.getHtml();
+    }
+
+    /**
+     * Returns the preview in the language of this view.
+     * @return The preview in the language of this view.
+     */
+    public String getPreview() {
+        return content.getPreview();
+    }
+
+    /**
+     * Returns the preview (text only, no HTML markup) in the language of this view.
+     * @return The preview (text only, no HTML markup) in the language of this view.
+     */
+    public String getPreviewTextOnly() {
+        return content.getPreviewTextOnly();
+    }
+
+    /**
+     * Returns the context of the Fragment.
+     * @return The context of the Fragment.
+     */
+    public Map<String, Object> getContext() {
+        return fragment.getContext();
+    }
+
+    /**
+     * Returns the directory in which the file of the Fragment is located.
+     * @return The directory in which the file of the Fragment is located.
+     */
+    public String getDirectory() {
+        return fragment.getDirectory();
+    }
+
+    /**
+     * Returns the date of the Fragment.
+     * @return The date of the Fragment.
+     */
+    public Date getDate() {
+        return fragment.getDate();
+    }
+
+    /**
+     * Returns the ZonedDateTime of the Fragment.
+     * @return The ZonedDateTime of the Fragment.
+     */
+    public ZonedDateTime getDateTime() {
+        return fragment.getDateTime();
+    }
+
+    /**
+     * Returns the default language of the Fragment.
+     * @return The default language of the Fragment.
+     */
+    public String getDefaultLanguage() {
+        return fragment.getDefaultLanguage();
+    }
+
+    /**
+     * Returns the filename of the Fragment.
+     * @return The filename of the Fragment.
+     */
+    public String getFilename() {
+        return fragment.getFilename();
+    }
+
+    /**
+     * Returns the front matter of the Fragment.
+     * @return The front matter of the Fragment.
+     */
+    public Map<String, Object> getFrontMatter() {
+        return fragment.getFrontMatter();
+    }
+
+    /**
+     * Returns the FrontMatterType of the Fragment.
+     * @return The FrontMatterType of the Fragment.
+     */
+    public FrontMatterType getFrontMatterType() {
+        return fragment.getFrontMatterType();
+    }
+
+    /**
+     * Returns the full URL of the Fragment.
+     * @return The full URL of the Fragment.
+     */
+    public String getFullUrl() {
+        return fragment.getFullUrl();
+    }
+
+    /**
+     * Returns the encoded full URL of the Fragment.
+     * @return The encoded full URL of the Fragment.
+     */
+    public String getFullUrlEncoded() {
+        return fragment.getFullUrlEncoded();
+    }
+
+    /**
+     * Returns the content of all languages of the Fragment.
+     * @return The content of all languages of the Fragment.
+     */
+    public Map<String, String> getLanguages() {
+        return fragment.getLanguages();
+    }
+
+    /**
+     * Returns the previews of all languages of the Fragment.
+     * @return The previews of all languages of the Fragment.
+     */
+    public Map<String, String> getLanguagesPreview() {
+        return fragment.getLanguagesPreview();
+    }
+
+    /**
+     * Returns the text only previews of all languages of the Fragment.
+     * @return The text only previews of all languages of the Fragment.
+     */
+    public Map<String, String> getLanguagesPreviewTextOnly() {
+        return fragment.getLanguagesPreviewTextOnly();
+    }
+
+    /**
+     * Returns the titles of all languages of the Fragment.
+     * @return The titles of all languages of the Fragment.
+     */
+    public Map<String, String> getLanguagesTitles() {
+        return fragment.getLanguagesTitles();
+    }
+
+    /**
+     * Returns the name of the Fragments class of the Fragment.
+     * @return The name of the Fragments class of the Fragment.
+     */
+    public String getName() {
+        return fragment.getName();
+    }
+
+    /**
+     * Returns the order of the Fragment.
+     * @return The order of the Fragment.
+     */
+    public int getOrder() {
+        return fragment.getOrder();
+    }
+
+    /**
+     * Returns the slug of the Fragment.
+     * @return The slug of the Fragment.
+     */
+    public String getSlug() {
+        return fragment.getSlug();
+    }
+
+    /**
+     * Returns the template of the Fragment.
+     * @return The template of the Fragment.
+     */
+    public String getTemplate() {
+        return fragment.getTemplate();
+    }
+
+    /**
+     * Returns the title of the Fragment.
+     * @return The title of the Fragment.
+     */
+    public String getTitle() {
+        return fragment.getTitle();
+    }
+
+    /**
+     * Returns the URL of the Fragment.
+     * @return The URL of the Fragment.
+     */
+    public String getUrl() {
+        return fragment.getUrl();
+    }
+
+    /**
+     * Returns the visibility of the Fragment.
+     * @return The visibility of the Fragment.
+     */
+    public boolean getVisible() {
+        return fragment.getVisible();
+    }
+
+    /**
+     * Returns the tags of the Fragment.
+     * @return The tags of the Fragment.
+     */
+    public List<String> getTags() {
+        return fragment.getTags();
+    }
+
+    /**
+     * Returns the categories of the Fragment.
+     * @return The categories of the Fragment.
+     */
+    public List<String> getCategories() {
+        return fragment.getCategories();
+    }
+}
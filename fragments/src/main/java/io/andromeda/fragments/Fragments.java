@@ -17,25 +17,40 @@ package io.andromeda.fragments;
 
 import io.andromeda.fragments.db.DBConfiguration;
 import io.andromeda.fragments.db.DBSupport;
+import io.andromeda.fragments.types.RouteType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.pippo.core.Application;
+import ro.pippo.core.TemplateEngine;
+import ro.pippo.core.route.RouteContext;
 import ro.pippo.core.util.ClasspathUtils;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.DateTimeException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Alexander Brandt
@@ -43,11 +58,20 @@ import java.util.TreeMap;
 public class Fragments {
     /** The logger instance for this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(Fragments.class);
+    /** The path of the overview pages below the URL path, e.g. urlPath/page/2. */
+    public static final String PAGE_PATH = "/page/";
+    /** The path of the tag pages below the URL path, e.g. urlPath/tags/java. */
+    public static final String TAGS_PATH = "/tags/";
+    /** The path of the category pages below the URL path, e.g. urlPath/categories/blog. */
+    public static final String CATEGORIES_PATH = "/categories/";
+    /** The route parameter of the page number. */
+    private static final String PAGE_PARAMETER = "{page: [1-9][0-9]*}";
 
-    /** All fragments, even invisible ones (visible: false). */
-    private List<Fragment> allFragments = new ArrayList<>();
-    /** Only fragments, invisible ones (visible: false) are excluded. */
-    private List<Fragment> visibleFragments = new ArrayList<>();
+    /**
+     * All fragments (even invisible ones), the tags and the categories. Replaced as a whole on changes, so readers
+     * always see a consistent state without locking.
+     */
+    private volatile FragmentsSnapshot snapshot = FragmentsSnapshot.EMPTY;
 
     /** Reference to the Pippo applications. Needed for creating the routes. */
     private Application application;
@@ -59,11 +83,17 @@ public class Fragments {
     private String dataDirectory;
     private String overviewTemplate;
     private Map<String, Object> defaultContext;
-    //Get the categories/tags sorted by name or the no of Fragments of this cat/tag
-    private Map<String, List<Fragment>> allCategories = new TreeMap<>();
-    private Map<String, List<Fragment>> visibleCategories = new TreeMap<>();
-    private Map<String, List<Fragment>> allTags = new TreeMap<>();
-    private Map<String, List<Fragment>> visibleTags = new TreeMap<>();
+    private LoadingStatistics loadingStatistics = new LoadingStatistics();
+    private FragmentCache fragmentCache;
+    private FragmentsWatcher watcher;
+    /** The rendered pages of the Fragments, null if disabled. */
+    private RenderCache<RenderedPage> renderCache;
+    /**
+     * The version of the data shared by all pages (the Fragments and the default context), used for the validators of
+     * conditional GET requests. It is the time of the last change in milliseconds. It is changed after the data, so the
+     * requests read it before the snapshot: a page is never sent with the validators of newer data.
+     */
+    private volatile long version = System.currentTimeMillis();
 
     public static final Comparator<Fragment> byOrder = Comparator.comparingInt(Fragment::getOrder);
 
@@ -72,7 +102,9 @@ public class Fragments {
 
     public static final Comparator<Fragment> byTitle = Comparator.comparing(Fragment::getTitle);
 
-    public static final Comparator<Fragment> byDate = Comparator.comparing(Fragment::getDate);
+    /** Orders by date, Fragments without date are put last. */
+    public static final Comparator<Fragment> byDate = Comparator.comparing(Fragment::getDate,
+            Comparator.nullsLast(Comparator.naturalOrder()));
 
     public Fragments(Application application, Configuration configuration) {
         this(application, null, configuration);
@@ -96,6 +128,9 @@ public class Fragments {
             this.defaultContext = defaultContext;
         }
         this.configuration = configuration;
+        if (configuration.getRenderCacheSize() > 0) {
+            this.renderCache = new RenderCache<>(configuration.getRenderCacheSize());
+        }
 
         LOGGER.debug("Creating Fragments for [{}].", configuration.getName());
         URL location = ClasspathUtils.locateOnClasspath("io/andromeda/fragments/" + dataDirectory);
@@ -134,149 +169,896 @@ public class Fragments {
             }
         }*/
 
-        readDirectory(dataDirectory);
-        prepareFragments();
+        prepareFragments(readDirectory(dataDirectory));
         registerFragments();
+        if (configuration.getWatch()) {
+            startWatching();
+        }
     }
 
     public List<Fragment> getFragments(boolean includingInvisible) {
-        if (includingInvisible) {
-            return allFragments;
+        return snapshot.getFragments(includingInvisible);
+    }
+
+    private List<Fragment> readDirectory(String directory) {
+        Path root = Paths.get(directory);
+        List<Path> paths;
+        if (!root.toFile().isDirectory()) {
+            LOGGER.error("[Fragments: \"{}\"] Error reading data directory (\"{}\"): Not a directory.", configuration.getName(), directory);
+            paths = new ArrayList<>();
+        } else if (configuration.getParallelLoading()) {
+            paths = getLoadingPool().invoke(new DirectoryWalker(root, configuration, true));
         } else {
-            return visibleFragments;
+            paths = new DirectoryWalker(root, configuration, false).invoke();
+        }
+        // The order of the directory stream depends on the file system, sort it to get a reproducible loading order.
+        Collections.sort(paths);
+
+        if (configuration.getCacheDirectory() != null) {
+            Path cacheFile = configuration.getCacheDirectory().resolve(
+                    "fragments_" + Utilities.slugify(configuration.getName()) + ".cache");
+            fragmentCache = new FragmentCache(cacheFile, configuration.getMarkdownEngine().getConfigurationHash());
         }
+
+        long start = System.nanoTime();
+        List<Fragment> fragments = loadFragments(paths);
+        loadingStatistics.setElapsedNanos(System.nanoTime() - start);
+        if (fragmentCache != null) {
+            fragmentCache.save();
+        }
+        long visible = fragments.stream().filter(Fragment::getVisible).count();
+        LOGGER.info("Fragments [{}]: Loaded {} visible fragments of {} total.", configuration.getName(), visible, fragments.size());
+        LOGGER.info("Fragments [{}]: Loading statistics: {}", configuration.getName(), loadingStatistics);
+        return fragments;
     }
 
-    private void readDirectory(String directory) {
-        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get(directory))) {
-            for (Path path : directoryStream) {
-                try {
-                    if (path.toString().toLowerCase().endsWith(configuration.getExtension())) {
-                        List<String> languages = application.getLanguages().getRegisteredLanguages();
-                        String defaultLanguage = "en";
-                        if (!languages.isEmpty()) {
-                            defaultLanguage = languages.get(0);
-                        }
-                        Fragment fragment = new Fragment(path.normalize().toString(), defaultLanguage, configuration);
-                        if (fragment.getVisible()) {
-                            visibleFragments.add(fragment);
-                        }
-                        allFragments.add(fragment);
-                    }
-                } catch (Exception e) {
-                    LOGGER.error("Error: ", e);
-                }
+    /**
+     * Creates the Fragments for the given files, either sequentially or in parallel via the loading executor. The
+     * result has the same order as the given paths, independent of the loading mode.
+     * @param paths The files to load.
+     * @return The loaded Fragments.
+     */
+    private List<Fragment> loadFragments(List<Path> paths) {
+        String defaultLanguage = getDefaultLanguage();
+        List<Fragment> result = new ArrayList<>(paths.size());
+        if (!configuration.getParallelLoading() || paths.size() < 2) {
+            Path root = Paths.get(dataDirectory);
+            for (Path path : paths) {
+                addIfNotNull(result, createFragment(root, path, defaultLanguage));
             }
-        } catch (IOException ex) {
-            LOGGER.error("[Fragments: \"{}\"] Error reading data directory (\"{}\"): {}", configuration.getName(), directory, ex);
+            return result;
+        }
+
+        ExecutorService executor = configuration.getLoadingExecutor();
+        if (executor == null) {
+            executor = ForkJoinPool.commonPool();
+        }
+        Path root = Paths.get(dataDirectory);
+        List<Future<Fragment>> futures = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            futures.add(executor.submit(() -> createFragment(root, path, defaultLanguage)));
         }
-        LOGGER.info("Fragments [{}]: Loaded {} visible fragments of {} total.", configuration.getName(), visibleFragments.size(), allFragments.size());
+        for (Future<Fragment> future : futures) {
+            try {
+                addIfNotNull(result, future.get());
+            } catch (InterruptedException e) {
+                LOGGER.error("[Fragments: \"{}\"] Interrupted while loading the fragments.", configuration.getName());
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOGGER.error("Error: ", e.getCause());
+            }
+        }
+        return result;
     }
 
-    public void registerFragments() {
-        for (final Fragment fragment : visibleFragments) {
-            application.GET(fragment.getUrl(), routeContext -> {
-                final Map<String, Object> context = new TreeMap<>(defaultContext);
-                String lang = routeContext.getParameter("lang").toString();
-                fragment.update(lang);
-                fragment.setContext(context, false);
-                context.put(Constants.FRAGMENT_ID, fragment);
-                context.put("overview_url", urlPath);
-                context.put("fragments", getVisibleFragmentOrdered(byOrder));
-                context.put("fragments_ordered_by_title", getVisibleFragmentOrdered(byTitle));
-                context.put("all_fragments", allFragments);
-
-                context.putAll(configuration.getDynamicContext(context));
-                if (dbsupport != null) {
-                    context.put("top_fragments", dbsupport.getTopFragments());
-                    context.put("number_of_clicks", dbsupport.addClick(fragment));
-                }
-                context.put("lang", lang);
+    private Fragment createFragment(Path root, Path path, String defaultLanguage) {
+        try {
+            Fragment fragment = new Fragment(path.toString(), defaultLanguage, configuration, getUrlPrefix(root, path),
+                    loadingStatistics, fragmentCache);
+            loadingStatistics.incrementFiles();
+            return fragment;
+        } catch (Exception e) {
+            LOGGER.error("Error: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the URL prefix of a Fragment from the path of its subdirectory, e.g. "guides/java/" for the file
+     * guides/java/intro.md. Each directory name is converted like a slug.
+     * @param root The data directory.
+     * @param path The file of the Fragment.
+     * @return The URL prefix, either empty or ending with "/".
+     */
+    private String getUrlPrefix(Path root, Path path) {
+        if (!configuration.getUrlPrefixFromPath()) {
+            return "";
+        }
+        Path relative = root.normalize().relativize(path.normalize()).getParent();
+        if (relative == null) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (Path element : relative) {
+            prefix.append(Utilities.slugify(element.toString())).append('/');
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Returns the pool used for walking the data directory in parallel. This is the loading executor, if it is a
+     * ForkJoinPool, otherwise the common ForkJoinPool.
+     * @return The pool used for walking the data directory in parallel.
+     */
+    private ForkJoinPool getLoadingPool() {
+        if (configuration.getLoadingExecutor() instanceof ForkJoinPool) {
+            return (ForkJoinPool) configuration.getLoadingExecutor();
+        }
+        return ForkJoinPool.commonPool();
+    }
+
+    private static void addIfNotNull(List<Fragment> fragments, Fragment fragment) {
+        if (fragment != null) {
+            fragments.add(fragment);
+        }
+    }
 
-                routeContext.render(fragment.getTemplate(), context);
-            });
+    private String getDefaultLanguage() {
+        return getLanguages().get(0);
+    }
+
+    /**
+     * Returns the languages registered in the application, the default language first.
+     * @return The registered languages or the default language "en", if there are none.
+     */
+    List<String> getLanguages() {
+        List<String> languages = application.getLanguages().getRegisteredLanguages();
+        if (languages.isEmpty()) {
+            return Collections.singletonList("en");
+        }
+        return languages;
+    }
+
+    /**
+     * Returns the configuration of this instance.
+     * @return The configuration of this Fragments instance.
+     */
+    Configuration getConfiguration() {
+        return configuration;
+    }
+
+    public void registerFragments() {
+        if (configuration.getDispatchRoute() || configuration.getWatch()) {
+            // Pippo's router cannot be changed while serving requests, so fragments added later (watch mode) are found
+            // via this route, too
+            application.GET(getDispatchRoute(), routeContext ->
+                    renderFragment(routeContext, routeContext.getRequestUri()));
+        } else {
+            for (final Fragment fragment : snapshot.getFragments(false)) {
+                final String url = fragment.getUrl();
+                application.GET(url, routeContext -> renderFragment(routeContext, url));
+            }
         }
         if (configuration.registerOverviewRoute()) {
-            String route = Utilities.removeTrailingSlash(urlPath);
-            application.GET(route, routeContext -> {
-                for (Fragment fragment: allFragments) {
-                    fragment.update(routeContext.getParameter("lang").toString());
-                }
-                final Map<String, Object> context = new TreeMap<>(defaultContext);
-                context.put("overview_url", urlPath);
-                context.put("fragments", getVisibleFragmentOrdered(byOrder));
-                context.put("fragments_ordered_by_title", getVisibleFragmentOrdered(byTitle));
-                context.put("all_fragments", allFragments);
-                if (dbsupport != null) {
-                    context.put("top_fragments", dbsupport.getTopFragments());
-                }
-                routeContext.render(overviewTemplate, context);
-            });
+            application.GET(Utilities.removeTrailingSlash(urlPath), routeContext -> renderOverview(routeContext, 1));
+            if (configuration.getNoOfItemsPerPage() > 0) {
+                application.GET(getPath(PAGE_PATH) + PAGE_PARAMETER,
+                        routeContext -> renderOverview(routeContext, getPage(routeContext)));
+            }
+        }
+        if (configuration.getTaxonomyRoutes()) {
+            registerTaxonomyRoutes(TAGS_PATH);
+            registerTaxonomyRoutes(CATEGORIES_PATH);
+        }
+        if (configuration.getArchiveRoutes()) {
+            // Month and day 0 stand for the complete year or month, so "00" must not match
+            String route = getPath("/{year: [0-9][0-9][0-9][0-9]}");
+            application.GET(route, routeContext -> renderArchive(routeContext, 0, 0));
+            route = route + "/{month: (?:0[1-9]|1[0-2])}";
+            application.GET(route, routeContext -> renderArchive(routeContext,
+                    routeContext.getParameter("month").toInt(), 0));
+            application.GET(route + "/{day: (?:0[1-9]|[12][0-9]|3[01])}", routeContext -> renderArchive(routeContext,
+                    routeContext.getParameter("month").toInt(), routeContext.getParameter("day").toInt()));
         }
     }
 
     /**
-     * Handle the creation of the encoded URL as well as the order of the Fragments.
+     * Registers the routes of the tag or category pages: urlPath/tags/{name} and, if the pages are paginated,
+     * urlPath/tags/{name}/page/{page}.
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
      */
-    private void prepareFragments(){
-        int counter = 0;
-        /* Make sure that the fragments are ordered by Title before changing/overwriting the order! */
-        if (!allFragments.isEmpty()) {
-            allFragments.sort(byOrderThenTitle);
-            for (Fragment fragment : allFragments) {
-                fragment.setFullUrl(configuration.getProtocol() + configuration.getDomain() + fragment.getUrl());
-                //Create the URLEncoded  url
-                try {
-                    fragment.setFullUrlEncoded(URLEncoder.encode(fragment.getFullUrl(), "UTF-8"));
-                } catch (UnsupportedEncodingException e) {
-                    LOGGER.error("Error: Cannot convert URL: {}! {}", fragment.getUrl(), e);
-                }
+    private void registerTaxonomyRoutes(String taxonomyPath) {
+        String route = getPath(taxonomyPath) + "{name: [^/]+}";
+        application.GET(route, routeContext -> renderTaxonomy(routeContext, taxonomyPath, 1));
+        if (configuration.getNoOfItemsPerPage() > 0) {
+            application.GET(route + PAGE_PATH + PAGE_PARAMETER,
+                    routeContext -> renderTaxonomy(routeContext, taxonomyPath, getPage(routeContext)));
+        }
+    }
 
-                if (fragment.getOrder() == Integer.MAX_VALUE) {
-                    fragment.setOrder(counter);
-                }
-                counter++;
+    /**
+     * Returns the path below the URL path of this instance.
+     * @param subPath The path relative to the URL path, starting with "/".
+     * @return The path, e.g. "/blog/page/" for the URL path "/blog/" and the sub path "/page/".
+     */
+    private String getPath(String subPath) {
+        return ("/".equals(urlPath) ? "" : Utilities.removeTrailingSlash(urlPath)) + subPath;
+    }
+
+    /**
+     * Returns the requested page of a paginated route.
+     * @param routeContext The context of the request.
+     * @return The page, Integer.MAX_VALUE for pages beyond the int range.
+     */
+    private static int getPage(RouteContext routeContext) {
+        String page = routeContext.getParameter("page").toString();
+        // Pages beyond the int range do not exist
+        return page.length() > 9 ? Integer.MAX_VALUE : Integer.parseInt(page);
+    }
 
-                handleTaxonomies(fragment, fragment.getTags(), allTags, visibleTags);
-                handleTaxonomies(fragment, fragment.getCategories(), allCategories, visibleCategories);
+    /**
+     * Renders a page of the visible Fragments with a tag or category with the overview template. The context contains
+     * the Fragments of the page (sorted by order) as "fragments", "taxonomy" ("tags" or "categories"), "taxonomy_name"
+     * and the pagination like the overview. The sorted list of each tag and category is created once per snapshot and
+     * language, so rendering a page does not depend on the number of Fragments. Passes the request on to the next
+     * route, if there is no visible Fragment with the tag or category or if the page does not exist.
+     * @param routeContext The context of the request.
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
+     * @param page The requested page, starting with 1.
+     */
+    private void renderTaxonomy(RouteContext routeContext, String taxonomyPath, int page) {
+        // Read before the snapshot, so a page of a replaced snapshot neither gets newer validators nor is cached
+        final long localVersion = version;
+        final long generation = renderCache == null ? 0 : renderCache.getGeneration();
+        final FragmentsSnapshot current = snapshot;
+        final boolean categories = CATEGORIES_PATH.equals(taxonomyPath);
+        final String name = routeContext.getParameter("name").toString();
+        final String lang = routeContext.getParameter("lang").toString();
+        final List<FragmentView> views = current.getTaxonomyViews(lang, categories, name);
+        final int itemsPerPage = configuration.getNoOfItemsPerPage();
+        if (views == null || (page > 1 && (itemsPerPage <= 0
+                || page > Utilities.getNumberOfPages(views.size(), itemsPerPage)))) {
+            routeContext.next();
+            return;
+        }
+        final String key = taxonomyPath + name + PAGE_PATH + page;
+        if (configuration.getConditionalGet() && ConditionalGet.handle(routeContext,
+                ConditionalGet.createETag(ConditionalGet.hash(key), lang, localVersion), localVersion)) {
+            return;
+        }
+        // The statistics of the clicks change with every request, they are not cached
+        if (renderCache == null || dbsupport != null) {
+            routeContext.render(overviewTemplate,
+                    createTaxonomyContext(current, lang, taxonomyPath, name, views, page));
+            return;
+        }
+        RenderedPage renderedPage = renderCache.get(Arrays.asList(key, lang, overviewTemplate), generation,
+                () -> new RenderedPage(renderToString(overviewTemplate,
+                        createTaxonomyContext(current, lang, taxonomyPath, name, views, page)),
+                        configuration.getPrecompress()));
+        renderedPage.send(routeContext);
+    }
+
+    /**
+     * Creates the context of a tag or category page.
+     * @param current The snapshot used for the complete request.
+     * @param lang The language of the request.
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
+     * @param name The name of the tag or category.
+     * @param views The sorted views of the Fragments with the tag or category.
+     * @param page The requested page, starting with 1. Must exist.
+     * @return The context of the template.
+     */
+    private Map<String, Object> createTaxonomyContext(FragmentsSnapshot current, String lang, String taxonomyPath,
+                                                      String name, List<FragmentView> views, int page) {
+        final Map<String, Object> context = new TreeMap<>(defaultContext);
+        context.put("overview_url", urlPath);
+        putFragmentLists(context, current, lang);
+        context.put("taxonomy", taxonomyPath.substring(1, taxonomyPath.length() - 1));
+        context.put("taxonomy_name", name);
+        int itemsPerPage = configuration.getNoOfItemsPerPage();
+        if (itemsPerPage > 0) {
+            int from = (page - 1) * itemsPerPage;
+            context.put("fragments", views.subList(from, Math.min(views.size(), from + itemsPerPage)));
+            putPagination(context, page, views.size(), getPath(taxonomyPath) + name + PAGE_PATH);
+        } else {
+            context.put("fragments", views);
+        }
+        putClicks(context, lang);
+        return context;
+    }
+
+    /**
+     * Renders an archive page with the overview template. The context contains the visible Fragments of the year, the
+     * month or the day (oldest first) as "fragments" and "archive_year", "archive_month", "archive_day" (0, if not
+     * requested) and "archive" (the FragmentsArchive, e.g. for the navigation). Passes the request on to the next route,
+     * if there are no Fragments for the date.
+     * @param routeContext The context of the request.
+     * @param month The month or 0 for the complete year.
+     * @param day The day of the month or 0 for the complete month.
+     */
+    private void renderArchive(RouteContext routeContext, int month, int day) {
+        // Read before the snapshot, so a page of a replaced snapshot does not get newer validators
+        final long localVersion = version;
+        final FragmentsSnapshot current = snapshot;
+        final int year = routeContext.getParameter("year").toInt();
+        final List<Fragment> fragments = getArchiveFragments(current, year, month, day);
+        if (fragments.isEmpty()) {
+            routeContext.next();
+            return;
+        }
+        String lang = routeContext.getParameter("lang").toString();
+        if (configuration.getConditionalGet() && ConditionalGet.handle(routeContext,
+                ConditionalGet.createETag(ConditionalGet.hash("archive" + year + "-" + month + "-" + day), lang,
+                        localVersion),
+                localVersion)) {
+            return;
+        }
+        routeContext.render(overviewTemplate, createArchiveContext(current, lang, fragments, year, month, day));
+    }
+
+    /**
+     * Returns the Fragments of an archive page.
+     * @param current The snapshot used for the complete request.
+     * @param year The year.
+     * @param month The month or 0 for the complete year.
+     * @param day The day of the month or 0 for the complete month.
+     * @return The Fragments of the date, oldest first, empty for an invalid date.
+     */
+    private static List<Fragment> getArchiveFragments(FragmentsSnapshot current, int year, int month, int day) {
+        final FragmentsArchive archive = current.getArchive();
+        try {
+            if (month == 0) {
+                return archive.getYear(year);
+            } else if (day == 0) {
+                return archive.getMonth(year, month);
+            }
+            return archive.getDay(year, month, day);
+        } catch (DateTimeException e) {
+            // e.g. February 30
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Creates the context of an archive page.
+     * @param current The snapshot used for the complete request.
+     * @param lang The language of the request.
+     * @param fragments The Fragments of the date, oldest first.
+     * @param year The year.
+     * @param month The month or 0 for the complete year.
+     * @param day The day of the month or 0 for the complete month.
+     * @return The context of the template.
+     */
+    private Map<String, Object> createArchiveContext(FragmentsSnapshot current, String lang, List<Fragment> fragments,
+                                                     int year, int month, int day) {
+        final Map<String, Object> context = new TreeMap<>(defaultContext);
+        context.put("overview_url", urlPath);
+        putFragmentLists(context, current, lang);
+        List<FragmentView> views = new ArrayList<>(fragments.size());
+        for (Fragment fragment : fragments) {
+            views.add(fragment.getView(lang));
+        }
+        context.put("fragments", views);
+        context.put("archive", current.getArchive());
+        context.put("archive_year", year);
+        context.put("archive_month", month);
+        context.put("archive_day", day);
+        putClicks(context, lang);
+        return context;
+    }
+
+    /**
+     * Returns the path of an archive page, e.g. urlPath + "/2017/01".
+     * @param year The year.
+     * @param month The month or 0 for the complete year.
+     * @param day The day of the month or 0 for the complete month.
+     * @return The path of the archive page.
+     */
+    String getArchivePath(int year, int month, int day) {
+        StringBuilder path = new StringBuilder(String.format("/%04d", year));
+        if (month > 0) {
+            path.append(String.format("/%02d", month));
+            if (day > 0) {
+                path.append(String.format("/%02d", day));
             }
         }
+        return getPath(path.toString());
     }
 
     /**
-     * Method to filter/sort the taxonomies (tags or categories) into the two result maps, allTags/allCategories and
-     * visibleTags/visibleCategories. The result maps have the tag/category names as key and and a list of all Fragments
-     * of this tag/category as the value.
-     * @param fragment The current Fragment.
-     * @param taxonomies The list of the taxonomies of this Fragment, either the tags or categories.
-     * @param allTaxonomies Reference to the all Taxonomy, either allTags or allCategories.
-     * @param visibleTaxonomies Reference to the visible Taxonomy, either visibleTags or visibleCategories.
+     * Returns the pattern of the route matching the URLs of all Fragments of this instance, e.g. urlPath + "{slug}"
+     * for RouteType.ARTICLES and urlPath + "/{yyyy}/{mm}/{dd}/{slug}" for RouteType.BLOG (see Fragment for the creation
+     * of the URL). With URL prefixes from the subdirectories, the route matches all URLs below urlPath. The Fragment
+     * itself is looked up by the URL of the request.
+     * @return The pattern of the dispatch route.
      */
-    private void handleTaxonomies(Fragment fragment, List<String> taxonomies, Map<String, List<Fragment>> allTaxonomies,
-                                  Map<String, List<Fragment>> visibleTaxonomies) {
-        if (taxonomies != null) {
-            for (int i = 0; i < taxonomies.size(); i++) {
-                List<Fragment> current;
-                String taxName = taxonomies.get(i);
-                if (allTaxonomies.containsKey(taxName)) {
-                    current = allTaxonomies.get(taxName);
+    String getDispatchRoute() {
+        if (configuration.getUrlPrefixFromPath()) {
+            return (urlPath.endsWith("/") ? urlPath : urlPath + "/") + "{path: .+}";
+        }
+        if (configuration.getRouteType() == RouteType.BLOG) {
+            return urlPath + "/{yyyy: [0-9]+}/{mm: [0-9]+}/{dd: [0-9]+}/{slug: [^/]+}";
+        }
+        return urlPath + "{slug: [^/]+}";
+    }
+
+    /**
+     * Renders the overview. If the overview is paginated, the lists of the visible Fragments only contain the Fragments
+     * of the requested page. Passes the request on to the next route, if the page does not exist.
+     * @param routeContext The context of the request.
+     * @param page The requested page, starting with 1.
+     */
+    private void renderOverview(RouteContext routeContext, int page) {
+        // Read before the snapshot, so a page of a replaced snapshot does not get newer validators
+        final long localVersion = version;
+        final FragmentsSnapshot current = snapshot;
+        String lang = routeContext.getParameter("lang").toString();
+        if (page > getNumberOfOverviewPages(current)) {
+            routeContext.next();
+            return;
+        }
+        if (configuration.getConditionalGet() && ConditionalGet.handle(routeContext,
+                ConditionalGet.createETag(ConditionalGet.hash("overview" + page), lang, localVersion),
+                localVersion)) {
+            return;
+        }
+        routeContext.render(overviewTemplate, createOverviewContext(current, lang, page));
+    }
+
+    /**
+     * Creates the context of the overview template.
+     * @param current The snapshot used for the complete request.
+     * @param lang The language of the request.
+     * @param page The requested page, starting with 1. Must exist, see getNumberOfOverviewPages().
+     * @return The context of the template.
+     */
+    private Map<String, Object> createOverviewContext(FragmentsSnapshot current, String lang, int page) {
+        final Map<String, Object> context = new TreeMap<>(defaultContext);
+        context.put("overview_url", urlPath);
+        putFragmentLists(context, current, lang);
+        if (configuration.getNoOfItemsPerPage() > 0) {
+            putPage(context, current, page);
+        }
+        putClicks(context, lang);
+        return context;
+    }
+
+    /**
+     * Returns the number of overview pages.
+     * @param current The snapshot.
+     * @return The number of overview pages, 1 if the overview is not paginated.
+     */
+    int getNumberOfOverviewPages(FragmentsSnapshot current) {
+        if (configuration.getNoOfItemsPerPage() <= 0) {
+            return 1;
+        }
+        return Utilities.getNumberOfPages(current.getFragments(false).size(), configuration.getNoOfItemsPerPage());
+    }
+
+    /**
+     * Replaces the lists of the visible Fragments in the context by the requested page and adds the pagination
+     * ("pagination", see Utilities.calculatePagination(), "pagination_url", "current_page", "number_of_pages"). The
+     * page is a view of the sorted list of the snapshot, so creating it does not depend on the number of Fragments.
+     * @param context The context of the template, already containing the complete lists.
+     * @param current The snapshot used for the complete request.
+     * @param page The requested page, starting with 1. Must exist, see getNumberOfOverviewPages().
+     */
+    private void putPage(Map<String, Object> context, FragmentsSnapshot current, int page) {
+        int itemsPerPage = configuration.getNoOfItemsPerPage();
+        int total = current.getFragments(false).size();
+        int from = (page - 1) * itemsPerPage;
+        int to = Math.min(total, from + itemsPerPage);
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            if ("fragments".equals(entry.getKey()) || entry.getKey().startsWith("fragments_ordered_by_")) {
+                entry.setValue(((List<?>) entry.getValue()).subList(from, to));
+            }
+        }
+        putPagination(context, page, total, getPath(PAGE_PATH));
+    }
+
+    /**
+     * Adds the pagination ("pagination", see Utilities.calculatePagination(), "pagination_url", "current_page",
+     * "number_of_pages") to the context.
+     * @param context The context of the template.
+     * @param page The requested page, starting with 1.
+     * @param total The number of paginated Fragments.
+     * @param paginationUrl The URL of the pages without the number of the page.
+     */
+    private void putPagination(Map<String, Object> context, int page, int total, String paginationUrl) {
+        int itemsPerPage = configuration.getNoOfItemsPerPage();
+        context.put(Utilities.PAGINATION_ID, Utilities.calculatePagination(page,
+                configuration.getNoOfPagesInPagination(), total, itemsPerPage));
+        context.put("pagination_url", paginationUrl);
+        context.put("current_page", page);
+        context.put("number_of_pages", Utilities.getNumberOfPages(total, itemsPerPage));
+    }
+
+    /**
+     * Renders a fragment. Passes the request on to the next route, if the fragment does not exist (anymore). If the
+     * render cache is enabled and the fragment is cacheable, the page is rendered only once per language of the request,
+     * language of the content and template.
+     * @param routeContext The context of the request.
+     * @param url The URL of the fragment.
+     */
+    private void renderFragment(RouteContext routeContext, String url) {
+        // Read before the snapshot, so a page of a replaced snapshot neither gets newer validators nor is cached
+        final long localVersion = version;
+        final long generation = renderCache == null ? 0 : renderCache.getGeneration();
+        final FragmentsSnapshot current = snapshot;
+        final Fragment fragment = current.getVisibleFragment(url);
+        if (fragment == null) {
+            routeContext.next();
+            return;
+        }
+        final String lang = routeContext.getParameter("lang").toString();
+        final FragmentView view = fragment.getView(lang);
+        final Long clicks = dbsupport == null ? null : dbsupport.addClick(fragment);
+        final String template = fragment.getTemplate();
+        if (configuration.getConditionalGet() && fragment.getCacheable() && ConditionalGet.handle(routeContext,
+                ConditionalGet.createETag(fragment.getContentHash(), lang + "+" + view.getLanguage(), localVersion),
+                Math.max(fragment.getLastModified(), localVersion))) {
+            return;
+        }
+        // The clicks and the dynamic context change with every request, they are not cached
+        if (renderCache == null || !fragment.getCacheable() || dbsupport != null
+                || configuration.hasDynamicContext()) {
+            routeContext.render(template, createFragmentContext(current, view, lang, clicks));
+            return;
+        }
+        // The context depends on the language of the request, not only on the language of the content
+        RenderedPage page = renderCache.get(Arrays.asList(fragment.getUrl(), lang, view.getLanguage(), template),
+                generation, () -> new RenderedPage(renderToString(template,
+                        createFragmentContext(current, view, lang, clicks)), configuration.getPrecompress()));
+        page.send(routeContext);
+    }
+
+    /**
+     * Adds the statistics of the clicks to the context, if the database is enabled: "top_fragments" (most clicks),
+     * "trending_fragments" (most clicks in the last 24 hours) as views in the language of the request and
+     * "click_statistics" (see ClickStatistics). They are read from memory.
+     * @param context The context of the template.
+     * @param lang The language of the request.
+     */
+    private void putClicks(Map<String, Object> context, String lang) {
+        if (dbsupport != null) {
+            context.put("top_fragments", toViews(dbsupport.getTopFragments(), lang));
+            context.put("trending_fragments", toViews(dbsupport.getTrendingFragments(), lang));
+            context.put("click_statistics", dbsupport.getClickStatistics());
+        }
+    }
+
+    /**
+     * Returns the views of the Fragments in the given language.
+     * @param fragments The Fragments.
+     * @param lang The language of the request.
+     * @return The views in the order of the Fragments.
+     */
+    private static List<FragmentView> toViews(List<Fragment> fragments, String lang) {
+        List<FragmentView> views = new ArrayList<>(fragments.size());
+        for (Fragment fragment : fragments) {
+            views.add(fragment.getView(lang));
+        }
+        return views;
+    }
+
+    /**
+     * Renders the page of a fragment like its route, but without counting a click. Used by the StaticExporter.
+     * @param current The snapshot.
+     * @param fragment The fragment.
+     * @param lang The language.
+     * @return The rendered page.
+     */
+    String renderFragmentPage(FragmentsSnapshot current, Fragment fragment, String lang) {
+        return renderToString(fragment.getTemplate(), createFragmentContext(current, fragment.getView(lang), lang,
+                null));
+    }
+
+    /**
+     * Renders an overview page like its route. Used by the StaticExporter.
+     * @param current The snapshot.
+     * @param lang The language.
+     * @param page The page, starting with 1. Must exist, see getNumberOfOverviewPages().
+     * @return The rendered page.
+     */
+    String renderOverviewPage(FragmentsSnapshot current, String lang, int page) {
+        return renderToString(overviewTemplate, createOverviewContext(current, lang, page));
+    }
+
+    /**
+     * Returns the number of pages of a tag or category.
+     * @param current The snapshot.
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
+     * @param name The name of the tag or category.
+     * @return The number of pages, 1 if the pages are not paginated, 0 if no visible Fragment has the tag or category.
+     */
+    int getNumberOfTaxonomyPages(FragmentsSnapshot current, String taxonomyPath, String name) {
+        TaxonomyIndex index = CATEGORIES_PATH.equals(taxonomyPath) ? current.getCategoryIndex() : current.getTagIndex();
+        int count = index.getCount(name);
+        if (count == 0 || configuration.getNoOfItemsPerPage() <= 0) {
+            return Math.min(count, 1);
+        }
+        return Utilities.getNumberOfPages(count, configuration.getNoOfItemsPerPage());
+    }
+
+    /**
+     * Returns the path of a tag or category page, e.g. urlPath + "/tags/java" or urlPath + "/tags/java/page/2".
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
+     * @param name The name of the tag or category.
+     * @param page The page, starting with 1, or 0 for the path without the page.
+     * @return The path of the tag or category page.
+     */
+    String getTaxonomyPath(String taxonomyPath, String name, int page) {
+        return getPath(taxonomyPath) + name + (page > 0 ? PAGE_PATH + page : "");
+    }
+
+    /**
+     * Renders a tag or category page like its route. Used by the StaticExporter.
+     * @param current The snapshot.
+     * @param lang The language.
+     * @param taxonomyPath Either TAGS_PATH or CATEGORIES_PATH.
+     * @param name The name of the tag or category.
+     * @param page The page, starting with 1. Must exist, see getNumberOfTaxonomyPages().
+     * @return The rendered page.
+     */
+    String renderTaxonomyPage(FragmentsSnapshot current, String lang, String taxonomyPath, String name, int page) {
+        List<FragmentView> views = current.getTaxonomyViews(lang, CATEGORIES_PATH.equals(taxonomyPath), name);
+        return renderToString(overviewTemplate, createTaxonomyContext(current, lang, taxonomyPath, name, views, page));
+    }
+
+    /**
+     * Renders an archive page like its route. Used by the StaticExporter.
+     * @param current The snapshot.
+     * @param lang The language.
+     * @param year The year.
+     * @param month The month or 0 for the complete year.
+     * @param day The day of the month or 0 for the complete month.
+     * @return The rendered page.
+     */
+    String renderArchivePage(FragmentsSnapshot current, String lang, int year, int month, int day) {
+        return renderToString(overviewTemplate, createArchiveContext(current, lang,
+                getArchiveFragments(current, year, month, day), year, month, day));
+    }
+
+    /**
+     * Creates the context of the template of a fragment.
+     * @param current The snapshot used for the complete request.
+     * @param view The fragment in the language of the request.
+     * @param lang The language of the request.
+     * @param clicks The number of clicks of the fragment or null, if the database is not enabled.
+     * @return The context of the template.
+     */
+    private Map<String, Object> createFragmentContext(FragmentsSnapshot current, FragmentView view, String lang,
+                                                      Long clicks) {
+        final Map<String, Object> context = new TreeMap<>(defaultContext);
+        context.put(Constants.FRAGMENT_ID, view);
+        context.put("overview_url", urlPath);
+        putFragmentLists(context, current, lang);
+
+        putClicks(context, lang);
+        if (dbsupport != null) {
+            context.put("number_of_clicks", clicks);
+        }
+        context.putAll(configuration.getDynamicContext(context));
+        context.put("lang", lang);
+        return context;
+    }
+
+    /**
+     * Renders a template into a string for the render cache. Unlike RouteContext.render(), the locals of the response
+     * and the session are not added to the context, because the page is shared by all requests.
+     * @param template The name of the template.
+     * @param context The context of the template.
+     * @return The rendered page.
+     */
+    private String renderToString(String template, Map<String, Object> context) {
+        TemplateEngine templateEngine = application.getTemplateEngine();
+        if (templateEngine == null) {
+            throw new IllegalStateException("No template engine set for rendering fragments: " + configuration.getName());
+        }
+        StringWriter writer = new StringWriter();
+        templateEngine.renderResource(template, context, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Puts the lists of the Fragments into the context of a template: "fragments" (by order), "all_fragments"
+     * (including the invisible ones) and "fragments_ordered_by_" + name for every registered order, e.g.
+     * "fragments_ordered_by_title". The lists are sorted once per snapshot, not per request.
+     * @param context The context of the template.
+     * @param current The snapshot used for the complete request.
+     * @param lang The language of the request.
+     */
+    private void putFragmentLists(Map<String, Object> context, FragmentsSnapshot current, String lang) {
+        context.put("fragments", current.getViews(lang, false, byOrder));
+        for (String order : current.getOrderNames()) {
+            context.put("fragments_ordered_by_" + order, current.getViews(lang, false, current.getOrder(order)));
+        }
+        context.put("all_fragments", current.getViews(lang, true, null));
+    }
+
+    /**
+     * Handle the creation of the encoded URL as well as the order of the Fragments. Publishes the Fragments as the
+     * current snapshot.
+     * @param fragments The loaded Fragments.
+     */
+    private void prepareFragments(List<Fragment> fragments){
+        /* Make sure that the fragments are ordered by Title before changing/overwriting the order! */
+        if (!fragments.isEmpty()) {
+            sortByOrder(fragments, Collections.emptySet());
+            for (Fragment fragment : fragments) {
+                prepareFragment(fragment);
+            }
+        }
+        publish(new FragmentsSnapshot(fragments, configuration.getOrders()));
+    }
+
+    /**
+     * Makes the snapshot the current one. Creates the date index before, if it is needed.
+     * @param newSnapshot The new snapshot.
+     */
+    private void publish(FragmentsSnapshot newSnapshot) {
+        if (configuration.getRouteType() == RouteType.BLOG || configuration.getArchiveRoutes()) {
+            newSnapshot.getArchive();
+        }
+        snapshot = newSnapshot;
+    }
+
+    /**
+     * Creates the full URL and the encoded full URL of a Fragment.
+     * @param fragment The Fragment.
+     */
+    private void prepareFragment(Fragment fragment) {
+        fragment.setFullUrl(configuration.getProtocol() + configuration.getDomain() + fragment.getUrl());
+        //Create the URLEncoded  url
+        try {
+            fragment.setFullUrlEncoded(URLEncoder.encode(fragment.getFullUrl(), "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            LOGGER.error("Error: Cannot convert URL: {}! {}", fragment.getUrl(), e);
+        }
+    }
+
+    /**
+     * Sorts the Fragments by the order defined in the front matter, then by title. Fragments without an order in the
+     * front matter get their position as order. The Fragments of a published snapshot are not changed, if their
+     * position changed they are replaced by a copy with the new order.
+     * @param fragments The Fragments to sort.
+     * @param published The Fragments of the published snapshot.
+     * @return The replaced Fragments with their copies.
+     */
+    private static Map<Fragment, Fragment> sortByOrder(List<Fragment> fragments, Set<Fragment> published) {
+        fragments.sort(Comparator.comparingInt(Fragments::getConfiguredOrder).thenComparing(Fragment::getTitle));
+        Map<Fragment, Fragment> replaced = new IdentityHashMap<>();
+        for (int i = 0; i < fragments.size(); i++) {
+            Fragment fragment = fragments.get(i);
+            if (getConfiguredOrder(fragment) == Integer.MAX_VALUE && fragment.getOrder() != i) {
+                if (published.contains(fragment)) {
+                    Fragment copy = new Fragment(fragment, i);
+                    replaced.put(fragment, copy);
+                    fragments.set(i, copy);
                 } else {
-                    current = new ArrayList<>();
-                    allTaxonomies.put(taxName, current);
+                    fragment.setOrder(i);
                 }
-                current.add(fragment);
-                if (fragment.getVisible()) {
-                    List<Fragment> currentVisible;
-                    if (visibleTaxonomies.containsKey(taxName)) {
-                        currentVisible = visibleTaxonomies.get(taxName);
-                    } else {
-                        currentVisible = new ArrayList<>();
-                        visibleTaxonomies.put(taxName, currentVisible);
-                    }
-                    currentVisible.add(fragment);
+            }
+        }
+        return replaced;
+    }
+
+    private static int getConfiguredOrder(Fragment fragment) {
+        if (fragment.getFrontMatter() == null || !fragment.getFrontMatter().containsKey(Constants.ORDER_ID)) {
+            return Integer.MAX_VALUE;
+        }
+        return fragment.getOrder();
+    }
+
+    /**
+     * Starts watching the data directory for changes.
+     */
+    private void startWatching() {
+        Path root = Paths.get(dataDirectory);
+        if (!root.toFile().isDirectory()) {
+            return;
+        }
+        try {
+            watcher = new FragmentsWatcher(root, new DirectoryWalker(root, configuration, false),
+                    configuration.getWatchDelay(), this::applyChanges, configuration.getName());
+            watcher.start();
+            LOGGER.info("Fragments [{}]: Watching \"{}\" for changes.", configuration.getName(), root);
+        } catch (IOException e) {
+            LOGGER.error("Fragments [{}]: Cannot watch the data directory: {}", configuration.getName(), e.toString());
+        }
+    }
+
+    /**
+     * Stops watching the data directory for changes and writes the remaining clicks to the database, if they are
+     * enabled.
+     */
+    public void close() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        if (dbsupport != null) {
+            dbsupport.close();
+        }
+    }
+
+    /**
+     * Updates the Fragments after files were changed: reloads the changed files, removes the deleted ones and publishes
+     * a new snapshot. Only the tags and categories of the changed Fragments get new lists, requests in progress keep
+     * working with the old snapshot.
+     * @param changed The changed files. A directory stands for all files inside it.
+     */
+    synchronized void applyChanges(Set<Path> changed) {
+        long start = System.nanoTime();
+        final FragmentsSnapshot current = snapshot;
+        Path root = Paths.get(dataDirectory);
+        DirectoryWalker walker = new DirectoryWalker(root, configuration, false);
+        Map<Path, Fragment> byPath = new HashMap<>();
+        for (Fragment fragment : current.getFragments(true)) {
+            byPath.put(Paths.get(fragment.getFilename()).normalize(), fragment);
+        }
+
+        // Collect the affected files, a directory stands for the known files inside it and its current files
+        Set<Path> files = new TreeSet<>();
+        for (Path changedPath : changed) {
+            Path path = changedPath.normalize();
+            for (Path known : byPath.keySet()) {
+                if (known.startsWith(path)) {
+                    files.add(known);
+                }
+            }
+            if (Files.isDirectory(path)) {
+                if (walker.acceptsDirectory(path)) {
+                    files.addAll(walker.forDirectory(path).invoke());
                 }
+            } else {
+                files.add(path);
+            }
+        }
+
+        Set<Fragment> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Path> toLoad = new ArrayList<>();
+        for (Path file : files) {
+            Fragment old = byPath.get(file);
+            if (old != null) {
+                removed.add(old);
             }
+            if (Files.isRegularFile(file) && walker.accepts(file)) {
+                toLoad.add(file);
+            } else if (old != null && fragmentCache != null) {
+                fragmentCache.remove(file);
+            }
+        }
+        if (removed.isEmpty() && toLoad.isEmpty()) {
+            return;
+        }
+        List<Fragment> added = loadFragments(toLoad);
+        if (fragmentCache != null) {
+            fragmentCache.save();
         }
+
+        List<Fragment> all = new ArrayList<>(current.getFragments(true).size() + added.size());
+        for (Fragment fragment : current.getFragments(true)) {
+            if (!removed.contains(fragment)) {
+                all.add(fragment);
+            }
+        }
+        for (Fragment fragment : added) {
+            prepareFragment(fragment);
+            all.add(fragment);
+        }
+        Set<Fragment> published = Collections.newSetFromMap(new IdentityHashMap<>());
+        published.addAll(current.getFragments(true));
+        Map<Fragment, Fragment> replaced = sortByOrder(all, published);
+        removed.addAll(replaced.keySet());
+        added.addAll(replaced.values());
+        publish(current.withChanges(all, removed, added));
+        invalidatePages();
+        LOGGER.info("Fragments [{}]: Reloaded {} changed files in {} ms, {} fragments (before: {}).",
+                configuration.getName(), files.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                all.size(), current.getFragments(true).size());
     }
 
     /**
@@ -286,6 +1068,27 @@ public class Fragments {
      */
     public void updateDefaultContext(Map<String, Object> newContext) {
         defaultContext.putAll(newContext);
+        invalidatePages();
+    }
+
+    /**
+     * Marks all pages as changed, e.g. after data used by the templates has changed: removes the rendered pages from the
+     * render cache and changes the validators (ETag and Last-Modified) of the pages. The changes of the Fragments and of
+     * the default context invalidate the pages automatically.
+     */
+    public void invalidatePages() {
+        version = Math.max(System.currentTimeMillis(), version + 1);
+        if (renderCache != null) {
+            renderCache.invalidate();
+        }
+    }
+
+    /**
+     * Returns the render cache.
+     * @return The render cache or null, if it is disabled.
+     */
+    RenderCache<RenderedPage> getRenderCache() {
+        return renderCache;
     }
 
     public DBSupport enableDatabase(DBConfiguration dbConfiguration) {
@@ -297,22 +1100,52 @@ public class Fragments {
         return dataDirectory;
     }
 
-    public List<Fragment> getVisibleFragmentOrdered(Comparator orderBy) {
-        List<Fragment> result =  new ArrayList(visibleFragments);
-        result.sort(orderBy);
-        return result;
+    /**
+     * Gets the visible Fragments in the given order. For the registered orders (see Configuration.addOrder()) the
+     * Fragments are sorted only once, so this does not copy or sort them.
+     * @param orderBy The comparator defining the order.
+     * @return The unmodifiable list of the sorted visible Fragments.
+     */
+    public List<Fragment> getVisibleFragmentOrdered(Comparator<Fragment> orderBy) {
+        return snapshot.getFragments(false, orderBy);
+    }
+
+    /**
+     * Gets the visible Fragments in a registered order, see Configuration.addOrder().
+     * @param order The name of the order, e.g. "title".
+     * @return The unmodifiable list of the sorted visible Fragments or null, if there is no order with this name.
+     */
+    public List<Fragment> getVisibleFragmentOrdered(String order) {
+        return snapshot.getFragments(false, order);
+    }
+
+    /**
+     * Gets the current snapshot of the loaded Fragments. Use it to read several values (e.g. the Fragments and the
+     * tags) consistently while the Fragments are updated in watch mode.
+     * @return The current snapshot.
+     */
+    public FragmentsSnapshot getSnapshot() {
+        return snapshot;
     }
 
     public String getName() {
         return configuration.getName();
     }
 
+    /**
+     * Gets the timings of loading the Fragments of this Fragments instance.
+     * @return The timings of loading the Fragments of this Fragments instance.
+     */
+    public LoadingStatistics getLoadingStatistics() {
+        return loadingStatistics;
+    }
+
     /**
      * Gets a map of all tags (including invisible Fragments) of this Fragments instance.
      * @return A map of all tags (including invisible Fragments) of this Fragments instance.
      */
     public Map<String, List<Fragment>> getAllTags() {
-        return allTags;
+        return snapshot.getAllTags();
     }
 
     /**
@@ -320,7 +1153,7 @@ public class Fragments {
      * @return A map of only the tags of the visible Fragments of this Fragments instance.
      */
     public Map<String, List<Fragment>> getVisibleTags() {
-        return visibleTags;
+        return snapshot.getVisibleTags();
     }
 
     /**
@@ -328,7 +1161,7 @@ public class Fragments {
      * @return A map of all categories (including invisible Fragments) of this Fragments instance.
      */
     public Map<String, List<Fragment>> getAllCategories() {
-        return allCategories;
+        return snapshot.getAllCategories();
     }
 
     /**
@@ -336,7 +1169,23 @@ public class Fragments {
      * @return A map of only the categories of the visible Fragments of this Fragments instance.
      */
     public Map<String, List<Fragment>> getVisibleCategories() {
-        return visibleCategories;
+        return snapshot.getVisibleCategories();
+    }
+
+    /**
+     * Gets the index of the tags of the visible Fragments of this Fragments instance.
+     * @return The index of the tags of the visible Fragments of this Fragments instance.
+     */
+    public TaxonomyIndex getTagIndex() {
+        return snapshot.getTagIndex();
+    }
+
+    /**
+     * Gets the index of the categories of the visible Fragments of this Fragments instance.
+     * @return The index of the categories of the visible Fragments of this Fragments instance.
+     */
+    public TaxonomyIndex getCategoryIndex() {
+        return snapshot.getCategoryIndex();
     }
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+/**
+ * Date index of the visible Fragments with a date, e.g. the posts of a blog. The Fragments are kept in an array sorted
+ * by date, a NavigableMap points from each day to its range in the array. So all queries (a year, a month, a day or any
+ * range of days) take O(log N) and return a view of the array without copying. The days are the ones of the date in UTC
+ * as defined in the front matter. The archive is immutable and created once per FragmentsSnapshot.
+ * @author Alexander Brandt
+ */
+public final class FragmentsArchive {
+    /** The Fragments sorted by date (oldest first). */
+    private final List<Fragment> fragments;
+    /** The days with Fragments and their range (from inclusive, to exclusive) in the list of Fragments. */
+    private final NavigableMap<LocalDate, int[]> days = new TreeMap<>();
+    /** The number of Fragments per month. */
+    private final NavigableMap<YearMonth, Integer> months;
+
+    /**
+     * Creates the archive.
+     * @param visibleFragments The visible Fragments, Fragments without date are ignored.
+     */
+    FragmentsArchive(List<Fragment> visibleFragments) {
+        List<Fragment> dated = new ArrayList<>();
+        for (Fragment fragment : visibleFragments) {
+            if (fragment.getDateTime() != null) {
+                dated.add(fragment);
+            }
+        }
+        dated.sort(Comparator.comparing(Fragment::getDateTime));
+        this.fragments = Collections.unmodifiableList(dated);
+
+        NavigableMap<YearMonth, Integer> localMonths = new TreeMap<>();
+        int start = 0;
+        for (int i = 1; i <= dated.size(); i++) {
+            LocalDate day = getDay(dated.get(start));
+            if (i == dated.size() || !getDay(dated.get(i)).equals(day)) {
+                days.put(day, new int[] {start, i});
+                localMonths.merge(YearMonth.from(day), i - start, Integer::sum);
+                start = i;
+            }
+        }
+        this.months = Collections.unmodifiableNavigableMap(localMonths);
+    }
+
+    private static LocalDate getDay(Fragment fragment) {
+        ZonedDateTime dateTime = fragment.getDateTime();
+        return dateTime.toLocalDate();
+    }
+
+    /**
+     * Returns all Fragments of the archive.
+     * @return The Fragments with a date, oldest first.
+     */
+    public List<Fragment> getFragments() {
+        return fragments;
+    }
+
+    /**
+     * Returns the Fragments of a range of days.
+     * @param from The first day (inclusive).
+     * @param to The last day (inclusive).
+     * @return The Fragments of the range, oldest first.
+     */
+    public List<Fragment> getFragments(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        Map.Entry<LocalDate, int[]> first = days.ceilingEntry(from);
+        Map.Entry<LocalDate, int[]> last = days.floorEntry(to);
+        if (first == null || last == null || first.getKey().isAfter(to)) {
+            return Collections.emptyList();
+        }
+        return fragments.subList(first.getValue()[0], last.getValue()[1]);
+    }
+
+    /**
+     * Returns the Fragments of a year.
+     * @param year The year.
+     * @return The Fragments of the year, oldest first.
+     */
+    public List<Fragment> getYear(int year) {
+        return getFragments(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+    }
+
+    /**
+     * Returns the Fragments of a month.
+     * @param year The year.
+     * @param month The month (1 - 12).
+     * @return The Fragments of the month, oldest first.
+     */
+    public List<Fragment> getMonth(int year, int month) {
+        YearMonth yearMonth = YearMonth.of(year, month);
+        return getFragments(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+    }
+
+    /**
+     * Returns the Fragments of a day.
+     * @param year The year.
+     * @param month The month (1 - 12).
+     * @param day The day of the month.
+     * @return The Fragments of the day, oldest first.
+     */
+    public List<Fragment> getDay(int year, int month, int day) {
+        LocalDate date = LocalDate.of(year, month, day);
+        return getFragments(date, date);
+    }
+
+    /**
+     * Returns the days with Fragments, e.g. for exporting the pages of the days.
+     * @return The days with Fragments, oldest day first.
+     */
+    public NavigableSet<LocalDate> getDays() {
+        return Collections.unmodifiableNavigableSet(days.navigableKeySet());
+    }
+
+    /**
+     * Returns the number of Fragments per month, e.g. for the navigation of the archive.
+     * @return The number of Fragments per month, oldest month first.
+     */
+    public NavigableMap<YearMonth, Integer> getMonths() {
+        return months;
+    }
+}
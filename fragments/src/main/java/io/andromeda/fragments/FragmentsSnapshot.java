@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The loaded state of a Fragments instance: the lists of all and of the visible Fragments, the visible Fragments by
+ * URL, the tags and the categories. A snapshot is immutable, so it can be read by any number of threads without
+ * locking and all values of one snapshot are consistent with each other. Changes (e.g. in watch mode) create a new
+ * snapshot, which shares the unchanged lists with the old one.
+ * @author Alexander Brandt
+ */
+public final class FragmentsSnapshot {
+    /** The snapshot without any Fragments. */
+    static final FragmentsSnapshot EMPTY = new FragmentsSnapshot(Collections.<Fragment>emptyList(),
+            Collections.<String, Comparator<Fragment>>emptyMap());
+
+    private final List<Fragment> allFragments;
+    private final List<Fragment> visibleFragments;
+    private final Map<String, Fragment> visibleFragmentsByUrl;
+    private final Map<String, List<Fragment>> allTags;
+    private final Map<String, List<Fragment>> visibleTags;
+    private final Map<String, List<Fragment>> allCategories;
+    private final Map<String, List<Fragment>> visibleCategories;
+    /** The registered orders with their names as key. */
+    private final Map<String, Comparator<Fragment>> orders;
+    /** All Fragments sorted in each registered order, with the comparator as key. */
+    private final Map<Comparator<Fragment>, List<Fragment>> allSorted = new IdentityHashMap<>();
+    /** The visible Fragments sorted in each registered order, with the comparator as key. */
+    private final Map<Comparator<Fragment>, List<Fragment>> visibleSorted = new IdentityHashMap<>();
+    /** The languages of the content of all Fragments. */
+    private final Set<String> languages = new HashSet<>();
+    /**
+     * The lists of views, created on first use, with the language, the visibility and the order or the language, the
+     * kind of taxonomy and the name of the tag/category as key.
+     */
+    private final Map<List<Object>, List<FragmentView>> views = new ConcurrentHashMap<>();
+    /** The date index of the visible Fragments, created on first use. */
+    private volatile FragmentsArchive archive;
+    /** The index of the tags of the visible Fragments, created on first use. */
+    private volatile TaxonomyIndex tagIndex;
+    /** The index of the categories of the visible Fragments, created on first use. */
+    private volatile TaxonomyIndex categoryIndex;
+
+    /**
+     * Creates the snapshot of the given Fragments.
+     * @param allFragments All Fragments, already sorted.
+     * @param orders The registered orders, the Fragments are sorted in each of them.
+     */
+    FragmentsSnapshot(List<Fragment> allFragments, Map<String, Comparator<Fragment>> orders) {
+        Map<String, List<Fragment>> localAllTags = new TreeMap<>();
+        Map<String, List<Fragment>> localVisibleTags = new TreeMap<>();
+        Map<String, List<Fragment>> localAllCategories = new TreeMap<>();
+        Map<String, List<Fragment>> localVisibleCategories = new TreeMap<>();
+        for (Fragment fragment : allFragments) {
+            handleTaxonomies(fragment, fragment.getTags(), localAllTags, localVisibleTags);
+            handleTaxonomies(fragment, fragment.getCategories(), localAllCategories, localVisibleCategories);
+        }
+        this.allFragments = Collections.unmodifiableList(new ArrayList<>(allFragments));
+        this.visibleFragments = getVisible(this.allFragments);
+        this.visibleFragmentsByUrl = indexByUrl(this.visibleFragments);
+        this.orders = orders;
+        sortFragments();
+        collectLanguages();
+        this.allTags = freeze(localAllTags);
+        this.visibleTags = freeze(localVisibleTags);
+        this.allCategories = freeze(localAllCategories);
+        this.visibleCategories = freeze(localVisibleCategories);
+    }
+
+    private FragmentsSnapshot(List<Fragment> allFragments, Map<String, Comparator<Fragment>> orders,
+                              Map<String, List<Fragment>> allTags,
+                              Map<String, List<Fragment>> visibleTags, Map<String, List<Fragment>> allCategories,
+                              Map<String, List<Fragment>> visibleCategories) {
+        this.allFragments = Collections.unmodifiableList(new ArrayList<>(allFragments));
+        this.visibleFragments = getVisible(this.allFragments);
+        this.visibleFragmentsByUrl = indexByUrl(this.visibleFragments);
+        this.orders = orders;
+        sortFragments();
+        collectLanguages();
+        this.allTags = Collections.unmodifiableMap(allTags);
+        this.visibleTags = Collections.unmodifiableMap(visibleTags);
+        this.allCategories = Collections.unmodifiableMap(allCategories);
+        this.visibleCategories = Collections.unmodifiableMap(visibleCategories);
+    }
+
+    private void sortFragments() {
+        for (Comparator<Fragment> comparator : orders.values()) {
+            allSorted.put(comparator, sort(allFragments, comparator));
+            visibleSorted.put(comparator, sort(visibleFragments, comparator));
+        }
+    }
+
+    private static List<Fragment> sort(List<Fragment> fragments, Comparator<Fragment> comparator) {
+        List<Fragment> result = new ArrayList<>(fragments);
+        result.sort(comparator);
+        return Collections.unmodifiableList(result);
+    }
+
+    private void collectLanguages() {
+        for (Fragment fragment : allFragments) {
+            languages.addAll(fragment.getLanguageKeys());
+        }
+    }
+
+    /**
+     * Creates a new snapshot with some Fragments removed and/or added. Only the tags and categories of these Fragments
+     * get new lists, the other lists are shared with this snapshot.
+     * @param allFragments All Fragments of the new snapshot, already sorted.
+     * @param removed The Fragments of this snapshot, which are not part of the new snapshot.
+     * @param added The Fragments, which are new in the new snapshot.
+     * @return The new snapshot.
+     */
+    FragmentsSnapshot withChanges(List<Fragment> allFragments, Collection<Fragment> removed,
+                                  Collection<Fragment> added) {
+        Set<String> changedTags = new HashSet<>();
+        Set<String> changedCategories = new HashSet<>();
+        for (Collection<Fragment> fragments : Arrays.asList(removed, added)) {
+            for (Fragment fragment : fragments) {
+                if (fragment.getTags() != null) {
+                    changedTags.addAll(fragment.getTags());
+                }
+                if (fragment.getCategories() != null) {
+                    changedCategories.addAll(fragment.getCategories());
+                }
+            }
+        }
+        Map<String, List<Fragment>> newAllTags = new TreeMap<>(allTags);
+        Map<String, List<Fragment>> newVisibleTags = new TreeMap<>(visibleTags);
+        Map<String, List<Fragment>> newAllCategories = new TreeMap<>(allCategories);
+        Map<String, List<Fragment>> newVisibleCategories = new TreeMap<>(visibleCategories);
+        rebuildTaxonomies(allFragments, changedTags, Fragment::getTags, newAllTags, newVisibleTags);
+        rebuildTaxonomies(allFragments, changedCategories, Fragment::getCategories, newAllCategories,
+                newVisibleCategories);
+        return new FragmentsSnapshot(allFragments, orders, newAllTags, newVisibleTags, newAllCategories,
+                newVisibleCategories);
+    }
+
+    /**
+     * Method to filter/sort the taxonomies (tags or categories) into the two result maps, allTags/allCategories and
+     * visibleTags/visibleCategories. The result maps have the tag/category names as key and and a list of all Fragments
+     * of this tag/category as the value.
+     * @param fragment The current Fragment.
+     * @param taxonomies The list of the taxonomies of this Fragment, either the tags or categories.
+     * @param allTaxonomies Reference to the all Taxonomy, either allTags or allCategories.
+     * @param visibleTaxonomies Reference to the visible Taxonomy, either visibleTags or visibleCategories.
+     */
+    private static void handleTaxonomies(Fragment fragment, List<String> taxonomies,
+                                         Map<String, List<Fragment>> allTaxonomies,
+                                         Map<String, List<Fragment>> visibleTaxonomies) {
+        if (taxonomies != null) {
+            for (String taxName : taxonomies) {
+                allTaxonomies.computeIfAbsent(taxName, key -> new ArrayList<>()).add(fragment);
+                if (fragment.getVisible()) {
+                    visibleTaxonomies.computeIfAbsent(taxName, key -> new ArrayList<>()).add(fragment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the lists of the given tags or categories by new ones, created with one pass over all Fragments, so they
+     * are in the order of allFragments. The lists of the other tags or categories are kept.
+     * @param allFragments All Fragments of the new snapshot, already sorted.
+     * @param names The names of the changed tags or categories.
+     * @param getTaxonomies Returns either the tags or the categories of a Fragment.
+     * @param allTaxonomies The lists of all Fragments, which are changed.
+     * @param visibleTaxonomies The lists of the visible Fragments, which are changed.
+     */
+    private static void rebuildTaxonomies(List<Fragment> allFragments, Set<String> names,
+                                          Function<Fragment, List<String>> getTaxonomies,
+                                          Map<String, List<Fragment>> allTaxonomies,
+                                          Map<String, List<Fragment>> visibleTaxonomies) {
+        if (names.isEmpty()) {
+            return;
+        }
+        Map<String, List<Fragment>> localAll = new HashMap<>();
+        Map<String, List<Fragment>> localVisible = new HashMap<>();
+        for (Fragment fragment : allFragments) {
+            List<String> taxonomies = getTaxonomies.apply(fragment);
+            if (taxonomies == null) {
+                continue;
+            }
+            for (String taxName : taxonomies) {
+                if (names.contains(taxName)) {
+                    localAll.computeIfAbsent(taxName, key -> new ArrayList<>()).add(fragment);
+                    if (fragment.getVisible()) {
+                        localVisible.computeIfAbsent(taxName, key -> new ArrayList<>()).add(fragment);
+                    }
+                }
+            }
+        }
+        for (String taxName : names) {
+            replaceTaxonomy(taxName, localAll.get(taxName), allTaxonomies);
+            replaceTaxonomy(taxName, localVisible.get(taxName), visibleTaxonomies);
+        }
+    }
+
+    private static void replaceTaxonomy(String taxName, List<Fragment> fragments,
+                                        Map<String, List<Fragment>> taxonomies) {
+        if (fragments == null) {
+            taxonomies.remove(taxName);
+        } else {
+            taxonomies.put(taxName, Collections.unmodifiableList(fragments));
+        }
+    }
+
+    private static List<Fragment> getVisible(List<Fragment> fragments) {
+        List<Fragment> result = new ArrayList<>();
+        for (Fragment fragment : fragments) {
+            if (fragment.getVisible()) {
+                result.add(fragment);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static Map<String, Fragment> indexByUrl(List<Fragment> fragments) {
+        Map<String, Fragment> result = new HashMap<>();
+        for (Fragment fragment : fragments) {
+            result.put(fragment.getUrl(), fragment);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Map<String, List<Fragment>> freeze(Map<String, List<Fragment>> taxonomies) {
+        for (Map.Entry<String, List<Fragment>> entry : taxonomies.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(taxonomies);
+    }
+
+    /********** Getters ***********************************************************************************************/
+
+    /**
+     * Returns the date index of the visible Fragments. It is created on first use, Fragments creates it right after
+     * loading for RouteType.BLOG and when the archive routes are enabled.
+     * @return The date index of the visible Fragments.
+     */
+    public FragmentsArchive getArchive() {
+        FragmentsArchive result = archive;
+        if (result == null) {
+            // Creating it twice in parallel is harmless, both are equal
+            result = new FragmentsArchive(visibleFragments);
+            archive = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the tags of the visible Fragments, it is created on first use.
+     * @return The index of the tags of the visible Fragments.
+     */
+    public TaxonomyIndex getTagIndex() {
+        TaxonomyIndex result = tagIndex;
+        if (result == null) {
+            // Creating it twice in parallel is harmless, both are equal
+            result = new TaxonomyIndex(visibleFragments, Fragment::getTags, visibleSorted);
+            tagIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the categories of the visible Fragments, it is created on first use.
+     * @return The index of the categories of the visible Fragments.
+     */
+    public TaxonomyIndex getCategoryIndex() {
+        TaxonomyIndex result = categoryIndex;
+        if (result == null) {
+            // Creating it twice in parallel is harmless, both are equal
+            result = new TaxonomyIndex(visibleFragments, Fragment::getCategories, visibleSorted);
+            categoryIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Fragments of this snapshot.
+     * @param includingInvisible If true, the invisible Fragments are included.
+     * @return The unmodifiable list of the Fragments.
+     */
+    public List<Fragment> getFragments(boolean includingInvisible) {
+        if (includingInvisible) {
+            return allFragments;
+        } else {
+            return visibleFragments;
+        }
+    }
+
+    /**
+     * Returns the views of the Fragments in the given language. The lists are created on first use and shared by all
+     * requests, they must not be changed.
+     * @param language The language. Fragments without content in this language fall back to their default language.
+     * @param includingInvisible If true, the invisible Fragments are included.
+     * @param orderBy The order of the views or null to keep the order of getFragments().
+     * @return The unmodifiable list of the views.
+     */
+    List<FragmentView> getViews(String language, boolean includingInvisible, Comparator<Fragment> orderBy) {
+        // Languages without content are all handled the same way, this also limits the number of cached lists
+        String localLanguage = languages.contains(language) ? language : null;
+        return views.computeIfAbsent(Arrays.asList(localLanguage, includingInvisible, orderBy), key -> {
+            List<Fragment> fragments = orderBy == null ? getFragments(includingInvisible)
+                    : getFragments(includingInvisible, orderBy);
+            List<FragmentView> result = new ArrayList<>(fragments.size());
+            for (Fragment fragment : fragments) {
+                result.add(fragment.getView(localLanguage));
+            }
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    /**
+     * Returns the views of the visible Fragments with a tag or category in the given language, sorted by order. The
+     * lists are created on first use and shared by all requests, they must not be changed.
+     * @param language The language. Fragments without content in this language fall back to their default language.
+     * @param categories If true, the name is a category, otherwise a tag.
+     * @param name The name of the tag or category.
+     * @return The unmodifiable list of the views or null, if no visible Fragment has this tag or category.
+     */
+    List<FragmentView> getTaxonomyViews(String language, boolean categories, String name) {
+        TaxonomyIndex index = categories ? getCategoryIndex() : getTagIndex();
+        if (index.getId(name) < 0) {
+            return null;
+        }
+        String localLanguage = languages.contains(language) ? language : null;
+        return views.computeIfAbsent(Arrays.asList(localLanguage, categories, name), key -> {
+            List<Fragment> fragments = index.query().and(name).getFragments(Fragments.byOrder);
+            List<FragmentView> result = new ArrayList<>(fragments.size());
+            for (Fragment fragment : fragments) {
+                result.add(fragment.getView(localLanguage));
+            }
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    /**
+     * Returns the Fragments of this snapshot in the given order. For a registered order (see
+     * Configuration.addOrder()) this is the list sorted when the snapshot was created, otherwise a new sorted list.
+     * @param includingInvisible If true, the invisible Fragments are included.
+     * @param orderBy The comparator defining the order.
+     * @return The unmodifiable list of the sorted Fragments.
+     */
+    public List<Fragment> getFragments(boolean includingInvisible, Comparator<Fragment> orderBy) {
+        List<Fragment> result = includingInvisible ? allSorted.get(orderBy) : visibleSorted.get(orderBy);
+        if (result == null) {
+            result = sort(getFragments(includingInvisible), orderBy);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Fragments of this snapshot in a registered order.
+     * @param includingInvisible If true, the invisible Fragments are included.
+     * @param order The name of the order, see Configuration.addOrder().
+     * @return The unmodifiable list of the sorted Fragments or null, if there is no order with this name.
+     */
+    public List<Fragment> getFragments(boolean includingInvisible, String order) {
+        Comparator<Fragment> comparator = orders.get(order);
+        if (comparator == null) {
+            return null;
+        }
+        return getFragments(includingInvisible, comparator);
+    }
+
+    /**
+     * Returns the names of the registered orders.
+     * @return The names of the registered orders.
+     */
+    Set<String> getOrderNames() {
+        return orders.keySet();
+    }
+
+    /**
+     * Returns the registered order with the given name.
+     * @param order The name of the order.
+     * @return The comparator or null, if there is no order with this name.
+     */
+    Comparator<Fragment> getOrder(String order) {
+        return orders.get(order);
+    }
+
+    /**
+     * Returns the visible Fragment with the given URL.
+     * @param url The URL of the Fragment.
+     * @return The Fragment or null, if there is no visible Fragment with this URL.
+     */
+    public Fragment getVisibleFragment(String url) {
+        return visibleFragmentsByUrl.get(url);
+    }
+
+    /**
+     * Gets a map of all tags (including invisible Fragments).
+     * @return An unmodifiable map of all tags (including invisible Fragments).
+     */
+    public Map<String, List<Fragment>> getAllTags() {
+        return allTags;
+    }
+
+    /**
+     * Gets a map of only the tags of the visible Fragments.
+     * @return An unmodifiable map of only the tags of the visible Fragments.
+     */
+    public Map<String, List<Fragment>> getVisibleTags() {
+        return visibleTags;
+    }
+
+    /**
+     * Gets a map of all categories (including invisible Fragments).
+     * @return An unmodifiable map of all categories (including invisible Fragments).
+     */
+    public Map<String, List<Fragment>> getAllCategories() {
+        return allCategories;
+    }
+
+    /**
+     * Gets a map of only the categories of the visible Fragments.
+     * @return An unmodifiable map of only the categories of the visible Fragments.
+     */
+    public Map<String, List<Fragment>> getVisibleCategories() {
+        return visibleCategories;
+    }
+}
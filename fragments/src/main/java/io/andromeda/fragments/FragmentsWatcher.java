@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the data directory (and its subdirectories, if the walk is recursive) for changes. Events are collected
+ * until no new event arrived for the configured delay, then the changed paths are handed over as one batch. So saving
+ * a file in an editor, which often results in several events, triggers only one update.
+ *
+ * The batch contains the changed files and directories. A directory stands for all files inside it, e.g. when a
+ * directory was created, deleted or events were lost (overflow, then the data directory is reported).
+ * @author Alexander Brandt
+ */
+class FragmentsWatcher implements Runnable {
+    /** The logger instance for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FragmentsWatcher.class);
+
+    /** The maximum time a batch is delayed by a continuous stream of events, as a multiple of the delay. */
+    private static final int MAX_DELAY_FACTOR = 10;
+
+    private final Path root;
+    private final DirectoryWalker walker;
+    private final long delay;
+    private final Consumer<Set<Path>> listener;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Creates the watcher and registers the directories. Call start() to start watching.
+     * @param root The data directory.
+     * @param walker The walker of the data directory, deciding which directories are watched.
+     * @param delay The time in milliseconds without new events, before the collected changes are handed over.
+     * @param listener Receives the changed files and directories.
+     * @param name The name used for the watching thread.
+     * @throws IOException If the watch service cannot be created.
+     */
+    FragmentsWatcher(Path root, DirectoryWalker walker, long delay, Consumer<Set<Path>> listener, String name)
+            throws IOException {
+        this.root = root;
+        this.walker = walker;
+        this.delay = delay;
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+        register(root);
+        thread = new Thread(this, "fragments-watcher-" + name);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching in a separate (daemon) thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching.
+     */
+    void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing the watch service of \"{}\": {}", root, e.toString());
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new LinkedHashSet<>();
+                long start = System.currentTimeMillis();
+                // Collect the events until there is a quiet period of delay ms, but don't wait forever
+                while (key != null) {
+                    collect(key, changed);
+                    if (System.currentTimeMillis() - start > MAX_DELAY_FACTOR * delay) {
+                        break;
+                    }
+                    key = watchService.poll(delay, TimeUnit.MILLISECONDS);
+                }
+                if (!changed.isEmpty()) {
+                    try {
+                        listener.accept(changed);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Error updating the fragments of \"{}\": ", root, e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed via close()
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.warn("Events for \"{}\" were lost, the complete directory is checked.", root);
+                changed.add(root);
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && walker.acceptsDirectory(path)) {
+                register(path);
+            }
+            changed.add(path);
+        }
+        key.reset();
+    }
+
+    /**
+     * Registers the directory and its subdirectories (if visited by the walker).
+     */
+    private void register(Path directory) {
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+                for (Path path : directoryStream) {
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && walker.acceptsDirectory(path)) {
+                        register(path);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error watching directory (\"{}\"): {}", directory, e.toString());
+        }
+    }
+}
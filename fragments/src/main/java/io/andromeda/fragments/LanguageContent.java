@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import com.vladsch.flexmark.ast.Node;
+
+/**
+ * The content of one language of a Fragment. Holds the Markdown source and renders the HTML, the preview and the text
+ * only preview exactly once, either directly while loading or on first access (lazy rendering). Safe to be used by
+ * several threads.
+ * @author Alexander Brandt
+ */
+class LanguageContent {
+    private final String markdown;
+    private final String frontMatterPreview;
+    private final MarkdownEngine engine;
+
+    private volatile boolean rendered = false;
+    private String html;
+    private String preview;
+    private String previewTextOnly;
+
+    /**
+     * Creates the content of one language.
+     * @param markdown The Markdown source of this language.
+     * @param frontMatterPreview The preview defined in the front matter or null, if the preview is defined via the
+     *                           more marker.
+     * @param engine The Markdown engine used for rendering.
+     * @param lazy If false, the content is rendered immediately.
+     */
+    LanguageContent(String markdown, String frontMatterPreview, MarkdownEngine engine, boolean lazy) {
+        this.markdown = markdown;
+        this.frontMatterPreview = frontMatterPreview;
+        this.engine = engine;
+        if (!lazy) {
+            render();
+        }
+    }
+
+    /**
+     * Creates already rendered content, e.g. a placeholder text.
+     * @param text The text used for the content and the previews.
+     */
+    LanguageContent(String text) {
+        this.markdown = text;
+        this.frontMatterPreview = null;
+        this.engine = null;
+        this.html = text;
+        this.preview = text;
+        this.previewTextOnly = text;
+        this.rendered = true;
+    }
+
+    /**
+     * Creates content, which was rendered before, e.g. taken from the FragmentCache.
+     * @param markdown The Markdown source of this language.
+     * @param html The HTML of the content.
+     * @param preview The HTML of the preview.
+     * @param previewTextOnly The text only preview.
+     */
+    LanguageContent(String markdown, String html, String preview, String previewTextOnly) {
+        this.markdown = markdown;
+        this.frontMatterPreview = null;
+        this.engine = null;
+        this.html = html;
+        this.preview = preview;
+        this.previewTextOnly = previewTextOnly;
+        this.rendered = true;
+    }
+
+    private void render() {
+        if (rendered) {
+            return;
+        }
+        synchronized (this) {
+            if (rendered) {
+                return;
+            }
+            Node document = engine.parse(markdown);
+            html = engine.render(document);
+            if (frontMatterPreview != null) {
+                document = engine.parse(frontMatterPreview);
+            } else if (!engine.truncateAtMoreMarker(document)) {
+                document = null;
+            }
+            if (document == null) {
+                preview = "";
+                previewTextOnly = "";
+            } else {
+                preview = engine.render(document);
+                previewTextOnly = engine.renderText(document);
+            }
+            rendered = true;
+        }
+    }
+
+    /**
+     * Returns the Markdown source.
+     * @return The Markdown source.
+     */
+    String getMarkdown() {
+        return markdown;
+    }
+
+    /**
+     * Returns true, if the content is already rendered.
+     * @return True, if the content is already rendered.
+     */
+    boolean isRendered() {
+        return rendered;
+    }
+
+    /**
+     * Returns the HTML of the content, renders it if necessary.
+     * @return The HTML of the content.
+     */
+    String getHtml() {
+        render();
+        return html;
+    }
+
+    /**
+     * Returns the HTML of the preview, renders it if necessary.
+     * @return The HTML of the preview.
+     */
+    String getPreview() {
+        render();
+        return preview;
+    }
+
+    /**
+     * Returns the text only preview, renders it if necessary.
+     * @return The text only preview.
+     */
+    String getPreviewTextOnly() {
+        render();
+        return previewTextOnly;
+    }
+}
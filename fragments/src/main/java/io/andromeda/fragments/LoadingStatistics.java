@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the time spent in the different stages of loading the Fragments of one Fragments instance. The stage times
+ * are summed over all loading threads, so with parallel loading their sum is larger than the elapsed time.
+ * @author Alexander Brandt
+ */
+public class LoadingStatistics {
+
+    /**
+     * The stages of loading a single Fragment.
+     */
+    public enum Stage {
+        /** Reading the file and splitting off the front matter or restoring it from the FragmentCache. */
+        READ,
+        /** Parsing and interpreting the YAML/JSON front matter. */
+        FRONT_MATTER,
+        /** Rendering the Markdown content, including the previews. */
+        MARKDOWN
+    }
+
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+    private final LongAdder files = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private volatile long elapsedNanos;
+
+    /**
+     * Creates empty statistics.
+     */
+    public LoadingStatistics() {
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Adds the given time to a stage. Can be called concurrently by the loading threads.
+     * @param stage The stage.
+     * @param nanos The time spent in nanoseconds.
+     */
+    public void add(Stage stage, long nanos) {
+        stageNanos.get(stage).add(nanos);
+    }
+
+    /**
+     * Counts one loaded file.
+     */
+    public void incrementFiles() {
+        files.increment();
+    }
+
+    /**
+     * Counts one file taken from the FragmentCache.
+     */
+    public void incrementCacheHits() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Returns the time spent in a stage summed over all loading threads.
+     * @param stage The stage.
+     * @return The time spent in milliseconds.
+     */
+    public long getMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos.get(stage).sum());
+    }
+
+    /**
+     * Returns the number of loaded files.
+     * @return The number of loaded files.
+     */
+    public long getFiles() {
+        return files.sum();
+    }
+
+    /**
+     * Returns the number of files taken from the FragmentCache instead of compiling them.
+     * @return The number of files taken from the cache.
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns the elapsed (wall clock) time of the complete loading.
+     * @return The elapsed time in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Sets the elapsed (wall clock) time of the complete loading.
+     * @param elapsedNanos The elapsed time in nanoseconds.
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files (%d from cache) in %d ms (read: %d ms, front matter: %d ms, markdown: %d ms)",
+                getFiles(), getCacheHits(), getElapsedMillis(), getMillis(Stage.READ), getMillis(Stage.FRONT_MATTER),
+                getMillis(Stage.MARKDOWN));
+    }
+}
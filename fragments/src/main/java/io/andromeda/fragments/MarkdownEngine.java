@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import com.vladsch.flexmark.Extension;
+import com.vladsch.flexmark.ast.Block;
+import com.vladsch.flexmark.ast.Code;
+import com.vladsch.flexmark.ast.Document;
+import com.vladsch.flexmark.ast.FencedCodeBlock;
+import com.vladsch.flexmark.ast.HardLineBreak;
+import com.vladsch.flexmark.ast.HtmlBlockBase;
+import com.vladsch.flexmark.ast.HtmlEntity;
+import com.vladsch.flexmark.ast.HtmlInlineBase;
+import com.vladsch.flexmark.ast.IndentedCodeBlock;
+import com.vladsch.flexmark.ast.Node;
+import com.vladsch.flexmark.ast.SoftLineBreak;
+import com.vladsch.flexmark.ast.Text;
+import com.vladsch.flexmark.ext.tables.TablesExtension;
+import com.vladsch.flexmark.html.HtmlRenderer;
+import com.vladsch.flexmark.parser.Parser;
+import com.vladsch.flexmark.util.options.MutableDataSet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Converts Markdown into HTML. The parser and the renderer are created once and are thread-safe, so one instance is
+ * shared by all Fragments of a Configuration, also while loading them in parallel.
+ * @author Alexander Brandt
+ */
+public class MarkdownEngine {
+    /** The more marker separating the preview from the rest of the content, e.g. &lt;!--more--&gt; or &lt;!-- more --&gt;. */
+    private static final Pattern MORE_MARKER = Pattern.compile("<!-- ?more ?-->");
+
+    private final List<Extension> extensions;
+    private final Parser parser;
+    private final HtmlRenderer renderer;
+    private final String configurationHash;
+
+    /**
+     * Creates a MarkdownEngine with the default extensions (tables).
+     */
+    public MarkdownEngine() {
+        this(Collections.singletonList(TablesExtension.create()));
+    }
+
+    /**
+     * Creates a MarkdownEngine with the given flexmark extensions.
+     * @param extensions The flexmark extensions used for parsing and rendering.
+     */
+    public MarkdownEngine(List<? extends Extension> extensions) {
+        this.extensions = Collections.unmodifiableList(new ArrayList<>(extensions));
+        MutableDataSet options = new MutableDataSet();
+        options.set(Parser.EXTENSIONS, this.extensions);
+        options.set(HtmlRenderer.OBFUSCATE_EMAIL, true);
+        parser = Parser.builder(options).build();
+        renderer = HtmlRenderer.builder(options).build();
+        StringBuilder configuration = new StringBuilder("obfuscateEmail=true");
+        for (Extension extension : this.extensions) {
+            configuration.append(';').append(extension.getClass().getName());
+        }
+        configurationHash = FragmentCache.hash(configuration.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses the Markdown into a flexmark document.
+     * @param markdown The Markdown text.
+     * @return The root node of the parsed document.
+     */
+    public Node parse(String markdown) {
+        return parser.parse(markdown);
+    }
+
+    /**
+     * Renders a flexmark node (usually a document) into HTML.
+     * @param node The node to render.
+     * @return The HTML.
+     */
+    public String render(Node node) {
+        return renderer.render(node);
+    }
+
+    /**
+     * Converts the Markdown into HTML.
+     * @param markdown The Markdown text.
+     * @return The HTML.
+     */
+    public String toHtml(String markdown) {
+        return render(parse(markdown));
+    }
+
+    /**
+     * Renders a flexmark node (usually a document) into plain text without any HTML markup.
+     * @param node The node to render.
+     * @return The plain text.
+     */
+    public String renderText(Node node) {
+        StringBuilder text = new StringBuilder();
+        collectText(node, text);
+        return text.toString().trim();
+    }
+
+    /**
+     * Collects the text of all leaf blocks (blocks without child blocks, e.g. paragraphs or headings), one line per
+     * block.
+     */
+    private static void collectText(Node node, StringBuilder text) {
+        boolean hasChildBlocks = false;
+        for (Node child : node.getChildren()) {
+            if (child instanceof Block) {
+                hasChildBlocks = true;
+                collectText(child, text);
+            }
+        }
+        if (!hasChildBlocks && node instanceof Block) {
+            String blockText;
+            if (node instanceof FencedCodeBlock || node instanceof IndentedCodeBlock) {
+                blockText = ((Block) node).getContentChars().toString().trim();
+            } else {
+                StringBuilder block = new StringBuilder();
+                collectInlineText(node, block);
+                blockText = block.toString().trim();
+            }
+            if (!blockText.isEmpty()) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(blockText);
+            }
+        }
+    }
+
+    /**
+     * Collects the text of the inline nodes like the text of the rendered HTML: backslash escapes and entities are
+     * resolved, the text of code is taken as it is.
+     */
+    private static void collectInlineText(Node node, StringBuilder text) {
+        for (Node child : node.getChildren()) {
+            if (child instanceof Text) {
+                if (child.isOrDescendantOfType(Code.class)) {
+                    text.append(child.getChars());
+                } else {
+                    text.append(child.getChars().unescape());
+                }
+            } else if (child instanceof HtmlEntity) {
+                text.append(child.getChars().unescape());
+            } else if (child instanceof SoftLineBreak || child instanceof HardLineBreak) {
+                text.append('\n');
+            } else {
+                collectInlineText(child, text);
+            }
+        }
+    }
+
+    /**
+     * Removes the more marker and everything following it from the document, so the remaining document is the preview.
+     * Markers inside code blocks or code spans are not taken into account. Blocks which are empty after removing the
+     * marker, e.g. a paragraph starting with the marker, are removed, too.
+     * @param document The parsed document, which is modified.
+     * @return True, if the document contained a more marker.
+     */
+    public boolean truncateAtMoreMarker(Node document) {
+        Node marker = findMoreMarker(document);
+        if (marker == null) {
+            return false;
+        }
+        Node node = marker;
+        while (node != null && node != document) {
+            Node next = node.getNext();
+            while (next != null) {
+                Node following = next.getNext();
+                next.unlink();
+                next = following;
+            }
+            node = node.getParent();
+        }
+        Node parent = marker.getParent();
+        marker.unlink();
+        while (parent != null && !(parent instanceof Document) && !parent.hasChildren()) {
+            Node grandParent = parent.getParent();
+            parent.unlink();
+            parent = grandParent;
+        }
+        return true;
+    }
+
+    private static Node findMoreMarker(Node document) {
+        for (Node node : document.getDescendants()) {
+            // An inline marker is a node on its own, a marker at the beginning of a line starts an HTML block, which
+            // can contain text following the marker.
+            if ((node instanceof HtmlInlineBase && MORE_MARKER.matcher(node.getChars()).matches())
+                    || (node instanceof HtmlBlockBase && MORE_MARKER.matcher(node.getChars()).find())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a hash of the configuration of this engine (options and extensions). Rendered content stored with a
+     * different hash, e.g. in the FragmentCache, is outdated.
+     * @return The hex encoded hash of the configuration.
+     */
+    public String getConfigurationHash() {
+        return configurationHash;
+    }
+
+    /**
+     * Returns the flexmark extensions of this engine.
+     * @return The unmodifiable list of the flexmark extensions of this engine.
+     */
+    public List<Extension> getExtensions() {
+        return extensions;
+    }
+}
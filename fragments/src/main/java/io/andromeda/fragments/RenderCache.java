@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of rendered pages. Concurrent misses for the same key are coalesced: only the first request renders
+ * the page, the others wait for its result. Pages rendered before the last invalidation are returned to the waiting
+ * requests, but they are not stored. A request reads the generation (see getGeneration()) before the data of the page,
+ * so a page rendered from data, which was replaced in the meantime, is never stored either.
+ * @param <V> The type of the pages, e.g. RenderedPage.
+ * @author Alexander Brandt
+ */
+class RenderCache<V> {
+    private final int maximumSize;
+    /** The cached pages in access order, guarded by itself. */
+    private final LinkedHashMap<Object, V> pages;
+    /** The pages being rendered, with the generation and the key of the page as key. */
+    private final Map<Object, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    /** Incremented by every invalidation. */
+    private volatile long generation = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates the cache.
+     * @param maximumSize The maximum number of pages, the least recently used pages are removed first.
+     */
+    RenderCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.pages = new LinkedHashMap<Object, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, V> eldest) {
+                return size() > RenderCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the current generation, it changes with every invalidation.
+     * @return The current generation.
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the cached page or renders it.
+     * @param key The key of the page, e.g. the URL, the language and the template.
+     * @param renderer Renders the page, called at most once for concurrent requests of the same key.
+     * @return The rendered page.
+     */
+    V get(Object key, Supplier<V> renderer) {
+        return get(key, generation, renderer);
+    }
+
+    /**
+     * Returns the cached page or renders it. The rendered page is only stored, if the cache was not invalidated since
+     * the given generation.
+     * @param key The key of the page, e.g. the URL, the language and the template.
+     * @param startGeneration The generation read before the data of the page, see getGeneration().
+     * @param renderer Renders the page, called at most once for concurrent requests of the same key and generation.
+     * @return The rendered page.
+     */
+    V get(Object key, long startGeneration, Supplier<V> renderer) {
+        V page;
+        synchronized (pages) {
+            page = pages.get(key);
+        }
+        if (page != null) {
+            hits.increment();
+            return page;
+        }
+        List<Object> loadingKey = Arrays.asList(startGeneration, key);
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(loadingKey, future);
+        if (existing != null) {
+            hits.increment();
+            return join(existing);
+        }
+        misses.increment();
+        try {
+            page = renderer.get();
+            future.complete(page);
+        } catch (Throwable e) {
+            // Also errors, e.g. a StackOverflowError of a template, the waiting requests must not block forever
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(loadingKey, future);
+        }
+        synchronized (pages) {
+            if (startGeneration == generation) {
+                pages.put(key, page);
+            }
+        }
+        return page;
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes all pages, e.g. after the Fragments or the default context have changed.
+     */
+    void invalidate() {
+        synchronized (pages) {
+            generation++;
+            pages.clear();
+        }
+        loading.clear();
+    }
+
+    /**
+     * Returns the number of cached pages.
+     * @return The number of cached pages.
+     */
+    int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered from the cache (including the ones waiting for a concurrent render).
+     * @return The number of cache hits.
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of rendered pages.
+     * @return The number of cache misses.
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+}
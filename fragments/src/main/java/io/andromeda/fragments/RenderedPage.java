@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import ro.pippo.core.Response;
+import ro.pippo.core.gzip.GZipResponseWrapper;
+import ro.pippo.core.route.RouteContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A rendered page as stored in the render cache: the UTF-8 encoded HTML and optionally its gzip compressed form, so
+ * serving the page is a plain copy of bytes without encoding or compressing it again.
+ * @author Alexander Brandt
+ */
+final class RenderedPage {
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String VARY = "Vary";
+    static final String GZIP = "gzip";
+
+    private final byte[] bytes;
+    private final byte[] gzip;
+
+    /**
+     * Creates the page.
+     * @param html The rendered HTML.
+     * @param compress If true, the gzip compressed form is created, too. It is dropped, if it is not smaller.
+     */
+    RenderedPage(String html, boolean compress) {
+        this.bytes = html.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress ? compress(bytes) : null;
+        this.gzip = compressed != null && compressed.length < bytes.length ? compressed : null;
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(bytes);
+        } catch (IOException e) {
+            // Not possible for an in-memory stream
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the UTF-8 encoded HTML.
+     * @return The UTF-8 encoded HTML.
+     */
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the gzip compressed HTML.
+     * @return The gzip compressed HTML or null, if the page is not compressed.
+     */
+    byte[] getGzip() {
+        return gzip;
+    }
+
+    /**
+     * Sends the page. The compressed form is sent, if the client accepts gzip and the response is not compressed by
+     * Pippo's GZipFilter anyway. The compressed form gets its own ETag, see ConditionalGet.toGzipETag().
+     * @param routeContext The context of the request.
+     */
+    void send(RouteContext routeContext) {
+        Response response = routeContext.getResponse();
+        byte[] content = bytes;
+        if (gzip != null) {
+            response.header(VARY, ACCEPT_ENCODING);
+            if (acceptsGzip(routeContext.getRequest().getHeader(ACCEPT_ENCODING))
+                    && !(response.getHttpServletResponse() instanceof GZipResponseWrapper)) {
+                response.header(CONTENT_ENCODING, GZIP);
+                String etag = response.getHeader(ConditionalGet.ETAG);
+                if (etag != null) {
+                    response.header(ConditionalGet.ETAG, ConditionalGet.toGzipETag(etag));
+                }
+                content = gzip;
+            }
+        }
+        if (response.getContentType() == null) {
+            response.html();
+        }
+        response.characterEncoding(StandardCharsets.UTF_8.name());
+        response.contentLength(content.length);
+        response.resource(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Returns true, if the Accept-Encoding header contains gzip (or "*") without "q=0".
+     * @param acceptEncoding The value of the Accept-Encoding header or null.
+     * @return True, if the client accepts gzip.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim().replace(" ", "");
+                    if (parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
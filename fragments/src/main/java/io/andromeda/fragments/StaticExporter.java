@@ -0,0 +1,536 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Exports the pages of Fragments instances as static files, e.g. to serve them with a web server. For every instance
+ * the pages of all visible Fragments, all overview pages, the tag and category pages (if the taxonomy routes are
+ * enabled) and the archive pages (if the archive routes are enabled) are rendered in every registered language, through
+ * the same templates and contexts as the routes. A page with the URL /blog/slug is written to blog/slug/index.html, the
+ * pages of the default language (the first registered language) are written to the root of the output directory, the
+ * ones of the other languages below a directory named like the language, e.g. de/blog/slug/index.html. Additionally a
+ * sitemap.xml with the pages of the default language and the output of the registered generators (e.g. feeds) are
+ * written.
+ *
+ * The pages are rendered in parallel. Every file is written to a temporary file first and then moved to its place, so a
+ * web server never sees a partially written file. The hashes of the written files are kept in a manifest file in the
+ * output directory. In incremental mode, files with an unchanged hash are not written again and files, which are not
+ * exported anymore, are deleted. Files, which could not be rendered, are kept.
+ * @author Alexander Brandt
+ */
+public class StaticExporter {
+    /** The logger instance for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaticExporter.class);
+
+    /** The name of the manifest file in the output directory. */
+    public static final String MANIFEST = ".fragments-export";
+    public static final String SITEMAP = "sitemap.xml";
+    public static final String INDEX = "index.html";
+
+    private final Path outputDirectory;
+    private boolean incremental = false;
+    private boolean sitemap = true;
+    private ExecutorService executor;
+    private final List<Generator> generators = new ArrayList<>();
+
+    /**
+     * Generates additional files of a Fragments instance, e.g. feeds.
+     */
+    @FunctionalInterface
+    public interface Generator {
+        /**
+         * Generates the files.
+         * @param fragments The Fragments instance.
+         * @param snapshot The snapshot of the Fragments instance used for the complete export.
+         * @return The content of the files with their path relative to the output directory as key.
+         */
+        Map<String, String> generate(Fragments fragments, FragmentsSnapshot snapshot);
+    }
+
+    /**
+     * Creates the exporter.
+     * @param outputDirectory The directory the files are written to. Created, if it does not exist.
+     */
+    public StaticExporter(Path outputDirectory) {
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Enables/disables the incremental mode. When enabled, only files with changed content are written and files of the
+     * previous export, which are not exported anymore, are deleted.
+     * @param incremental Enables/disables the incremental mode.
+     * @return This exporter.
+     */
+    public StaticExporter setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Enables/disables writing the sitemap.xml. Enabled by default.
+     * @param sitemap Enables/disables writing the sitemap.xml.
+     * @return This exporter.
+     */
+    public StaticExporter setSitemap(boolean sitemap) {
+        this.sitemap = sitemap;
+        return this;
+    }
+
+    /**
+     * Sets the executor used for rendering and writing the pages. When null (the default), the common ForkJoinPool is
+     * used.
+     * @param executor The executor.
+     * @return This exporter.
+     */
+    public StaticExporter setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Adds a generator of additional files, e.g. feeds. It is called once for every exported Fragments instance.
+     * @param generator The generator.
+     * @return This exporter.
+     */
+    public StaticExporter addGenerator(Generator generator) {
+        generators.add(generator);
+        return this;
+    }
+
+    /**
+     * Exports the pages of the given Fragments instances.
+     * @param fragmentsList The Fragments instances.
+     * @return The statistics of the export.
+     * @throws IOException If the output directory or the manifest cannot be written.
+     */
+    public Result export(Fragments... fragmentsList) throws IOException {
+        return export(Arrays.asList(fragmentsList));
+    }
+
+    /**
+     * Exports the pages of the given Fragments instances.
+     * @param fragmentsList The Fragments instances.
+     * @return The statistics of the export.
+     * @throws IOException If the output directory or the manifest cannot be written.
+     */
+    public Result export(List<Fragments> fragmentsList) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(outputDirectory);
+        Map<String, String> previous = readManifest();
+        Map<String, String> current = new ConcurrentHashMap<>();
+        Result result = new Result();
+        ExecutorService localExecutor = executor == null ? ForkJoinPool.commonPool() : executor;
+        List<Future<?>> futures = new ArrayList<>();
+        StringBuilder urls = new StringBuilder();
+
+        for (Fragments fragments : fragmentsList) {
+            final FragmentsSnapshot snapshot = fragments.getSnapshot();
+            List<String> languages = fragments.getLanguages();
+            for (String language : languages) {
+                String prefix = language.equals(languages.get(0)) ? "" : language + "/";
+                for (Fragment fragment : snapshot.getFragments(false)) {
+                    futures.add(localExecutor.submit(() -> write(prefix + toFile(fragment.getUrl()),
+                            () -> fragments.renderFragmentPage(snapshot, fragment, language), previous, current,
+                            result)));
+                }
+                if (fragments.getConfiguration().registerOverviewRoute()) {
+                    String route = Utilities.removeTrailingSlash(fragments.getConfiguration().getUrlPath());
+                    int pages = fragments.getNumberOfOverviewPages(snapshot);
+                    for (int page = 1; page <= pages; page++) {
+                        final int localPage = page;
+                        Supplier<String> renderer = () -> fragments.renderOverviewPage(snapshot, language, localPage);
+                        if (page == 1) {
+                            futures.add(localExecutor.submit(() -> write(prefix + toFile(route), renderer, previous,
+                                    current, result)));
+                        }
+                        if (fragments.getConfiguration().getNoOfItemsPerPage() > 0) {
+                            futures.add(localExecutor.submit(() -> write(prefix
+                                    + toFile(route + Fragments.PAGE_PATH + localPage), renderer, previous, current,
+                                    result)));
+                        }
+                    }
+                }
+                if (fragments.getConfiguration().getTaxonomyRoutes()) {
+                    for (String[] taxonomy : getTaxonomies(snapshot)) {
+                        int pages = fragments.getNumberOfTaxonomyPages(snapshot, taxonomy[0], taxonomy[1]);
+                        for (int page = 1; page <= pages; page++) {
+                            final int localPage = page;
+                            Supplier<String> renderer = () -> fragments.renderTaxonomyPage(snapshot, language,
+                                    taxonomy[0], taxonomy[1], localPage);
+                            if (page == 1) {
+                                futures.add(localExecutor.submit(() -> write(prefix
+                                        + toFile(fragments.getTaxonomyPath(taxonomy[0], taxonomy[1], 0)), renderer,
+                                        previous, current, result)));
+                            }
+                            if (fragments.getConfiguration().getNoOfItemsPerPage() > 0) {
+                                futures.add(localExecutor.submit(() -> write(prefix
+                                        + toFile(fragments.getTaxonomyPath(taxonomy[0], taxonomy[1], localPage)),
+                                        renderer, previous, current, result)));
+                            }
+                        }
+                    }
+                }
+                if (fragments.getConfiguration().getArchiveRoutes()) {
+                    for (int[] date : getArchivePages(snapshot.getArchive())) {
+                        futures.add(localExecutor.submit(() -> write(prefix
+                                + toFile(fragments.getArchivePath(date[0], date[1], date[2])),
+                                () -> fragments.renderArchivePage(snapshot, language, date[0], date[1], date[2]),
+                                previous, current, result)));
+                    }
+                }
+            }
+            for (Generator generator : generators) {
+                for (Map.Entry<String, String> file : generator.generate(fragments, snapshot).entrySet()) {
+                    futures.add(localExecutor.submit(() -> write(file.getKey(), file::getValue, previous, current,
+                            result)));
+                }
+            }
+            if (sitemap) {
+                appendUrls(urls, fragments, snapshot);
+            }
+        }
+        if (sitemap) {
+            String content = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n" + urls + "</urlset>\n";
+            futures.add(localExecutor.submit(() -> write(SITEMAP, () -> content, previous, current, result)));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Export interrupted", e);
+            } catch (ExecutionException e) {
+                // write() handles its errors, so this is unexpected
+                LOGGER.error("Error exporting: ", e.getCause());
+                result.failed.increment();
+            }
+        }
+
+        if (incremental) {
+            for (String file : previous.keySet()) {
+                if (!current.containsKey(file) && Files.deleteIfExists(outputDirectory.resolve(file))) {
+                    result.deleted.increment();
+                }
+            }
+        }
+        writeManifest(current);
+        LOGGER.info("Exported to \"{}\" in {} ms: {}", outputDirectory,
+                (System.nanoTime() - start) / 1_000_000, result);
+        return result;
+    }
+
+    /**
+     * Renders and writes one file, unless it is unchanged (incremental mode). If rendering or writing fails, the file of
+     * the previous export is kept and stays in the manifest, so an error never deletes a file, which is still valid.
+     */
+    private void write(String file, Supplier<String> renderer, Map<String, String> previous,
+                       Map<String, String> current, Result result) {
+        String key = null;
+        boolean claimed = false;
+        try {
+            Path path = outputDirectory.resolve(file).normalize();
+            if (!path.startsWith(outputDirectory) || path.equals(outputDirectory)) {
+                LOGGER.error("Not exporting \"{}\", it is outside of the output directory.", file);
+                result.failed.increment();
+                return;
+            }
+            key = outputDirectory.relativize(path).toString().replace('\\', '/');
+            byte[] bytes = renderer.get().getBytes(StandardCharsets.UTF_8);
+            String hash = FragmentCache.hash(bytes);
+            if (current.putIfAbsent(key, hash) != null) {
+                LOGGER.warn("\"{}\" is exported more than once, e.g. two fragments with the same URL.", key);
+                return;
+            }
+            claimed = true;
+            if (incremental && hash.equals(previous.get(key)) && Files.isRegularFile(path)) {
+                result.unchanged.increment();
+                return;
+            }
+            Path directory = path.getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            result.written.increment();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Error exporting \"{}\": ", file, e);
+            result.failed.increment();
+            if (key != null) {
+                keepPrevious(key, claimed, previous, current);
+            }
+        }
+    }
+
+    /**
+     * Keeps the entry of the previous export of a file, which could not be exported.
+     * @param key The file relative to the output directory.
+     * @param claimed True, if the new hash of the file is already in the current manifest.
+     */
+    private static void keepPrevious(String key, boolean claimed, Map<String, String> previous,
+                                     Map<String, String> current) {
+        String hash = previous.get(key);
+        if (claimed) {
+            // The file on disk is still the previous one (or missing)
+            if (hash == null) {
+                current.remove(key);
+            } else {
+                current.put(key, hash);
+            }
+        } else if (hash != null) {
+            current.putIfAbsent(key, hash);
+        }
+    }
+
+    /**
+     * Returns the file of a URL relative to the output directory, e.g. blog/slug/index.html for /blog/slug.
+     * @param url The URL.
+     * @return The relative path of the file.
+     */
+    static String toFile(String url) {
+        StringBuilder file = new StringBuilder();
+        for (String segment : url.split("/")) {
+            if (!segment.isEmpty()) {
+                file.append(segment).append('/');
+            }
+        }
+        return file.append(INDEX).toString();
+    }
+
+    /**
+     * Returns the archive pages: every year, month and day with Fragments as {year, month, day}, with month and day 0
+     * for the page of the complete year or month.
+     * @param archive The archive.
+     * @return The dates of the archive pages.
+     */
+    private static List<int[]> getArchivePages(FragmentsArchive archive) {
+        List<int[]> pages = new ArrayList<>();
+        LocalDate last = null;
+        for (LocalDate day : archive.getDays()) {
+            if (last == null || last.getYear() != day.getYear()) {
+                pages.add(new int[] {day.getYear(), 0, 0});
+            }
+            if (last == null || last.getYear() != day.getYear() || last.getMonthValue() != day.getMonthValue()) {
+                pages.add(new int[] {day.getYear(), day.getMonthValue(), 0});
+            }
+            pages.add(new int[] {day.getYear(), day.getMonthValue(), day.getDayOfMonth()});
+            last = day;
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the tags and categories with visible Fragments as {taxonomy path, name}. Names, which cannot be a path
+     * segment, are skipped, the routes do not match them either.
+     * @param snapshot The snapshot.
+     * @return The tags and categories.
+     */
+    private static List<String[]> getTaxonomies(FragmentsSnapshot snapshot) {
+        List<String[]> taxonomies = new ArrayList<>();
+        for (String name : snapshot.getTagIndex().getCounts().keySet()) {
+            if (isPathSegment(name)) {
+                taxonomies.add(new String[] {Fragments.TAGS_PATH, name});
+            }
+        }
+        for (String name : snapshot.getCategoryIndex().getCounts().keySet()) {
+            if (isPathSegment(name)) {
+                taxonomies.add(new String[] {Fragments.CATEGORIES_PATH, name});
+            }
+        }
+        return taxonomies;
+    }
+
+    private static boolean isPathSegment(String name) {
+        return !name.isEmpty() && !name.contains("/") && !name.contains("\\") && !".".equals(name)
+                && !"..".equals(name);
+    }
+
+    private static void appendUrls(StringBuilder urls, Fragments fragments, FragmentsSnapshot snapshot) {
+        Configuration configuration = fragments.getConfiguration();
+        if (configuration.registerOverviewRoute()) {
+            appendUrl(urls, configuration, configuration.getUrlPath());
+        }
+        if (configuration.getArchiveRoutes()) {
+            for (int[] date : getArchivePages(snapshot.getArchive())) {
+                appendUrl(urls, configuration, fragments.getArchivePath(date[0], date[1], date[2]));
+            }
+        }
+        if (configuration.getTaxonomyRoutes()) {
+            for (String[] taxonomy : getTaxonomies(snapshot)) {
+                appendUrl(urls, configuration, fragments.getTaxonomyPath(taxonomy[0], encode(taxonomy[1]), 0));
+                int pages = configuration.getNoOfItemsPerPage() > 0
+                        ? fragments.getNumberOfTaxonomyPages(snapshot, taxonomy[0], taxonomy[1]) : 0;
+                for (int page = 2; page <= pages; page++) {
+                    appendUrl(urls, configuration, fragments.getTaxonomyPath(taxonomy[0], encode(taxonomy[1]), page));
+                }
+            }
+        }
+        for (Fragment fragment : snapshot.getFragments(false)) {
+            urls.append("  <url><loc>").append(escape(fragment.getFullUrl())).append("</loc>");
+            if (fragment.getLastModified() > 0) {
+                urls.append("<lastmod>").append(DateTimeFormatter.ISO_LOCAL_DATE.format(
+                        Instant.ofEpochMilli(fragment.getLastModified()).atOffset(ZoneOffset.UTC))).append("</lastmod>");
+            }
+            urls.append("</url>\n");
+        }
+    }
+
+    private static void appendUrl(StringBuilder urls, Configuration configuration, String path) {
+        urls.append("  <url><loc>").append(escape(configuration.getProtocol() + configuration.getDomain() + path))
+                .append("</loc></url>\n");
+    }
+
+    private static String encode(String segment) {
+        try {
+            return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String encoded = Utilities.encode(c);
+            if (encoded == null) {
+                sb.append(c);
+            } else {
+                sb.append(encoded);
+            }
+        }
+        return sb.toString();
+    }
+
+    private Map<String, String> readManifest() {
+        Map<String, String> manifest = new TreeMap<>();
+        Path file = outputDirectory.resolve(MANIFEST);
+        if (!Files.isRegularFile(file)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(' ');
+                if (separator > 0) {
+                    manifest.put(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error reading the export manifest \"{}\", all files are written: {}", file, e.toString());
+            manifest.clear();
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, String> manifest) throws IOException {
+        Path file = outputDirectory.resolve(MANIFEST);
+        Path temp = Files.createTempFile(outputDirectory, MANIFEST, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(manifest).entrySet()) {
+                    writer.write(entry.getValue() + ' ' + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The statistics of an export.
+     */
+    public static final class Result {
+        private final LongAdder written = new LongAdder();
+        private final LongAdder unchanged = new LongAdder();
+        private final LongAdder deleted = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        /**
+         * Returns the number of written files.
+         * @return The number of written files.
+         */
+        public long getWritten() {
+            return written.sum();
+        }
+
+        /**
+         * Returns the number of unchanged files, which were not written again (incremental mode).
+         * @return The number of unchanged files.
+         */
+        public long getUnchanged() {
+            return unchanged.sum();
+        }
+
+        /**
+         * Returns the number of deleted files of the previous export (incremental mode).
+         * @return The number of deleted files.
+         */
+        public long getDeleted() {
+            return deleted.sum();
+        }
+
+        /**
+         * Returns the number of files, which could not be exported.
+         * @return The number of failed files.
+         */
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d written, %d unchanged, %d deleted, %d failed", getWritten(), getUnchanged(),
+                    getDeleted(), getFailed());
+        }
+    }
+}
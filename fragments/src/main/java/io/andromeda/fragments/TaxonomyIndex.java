@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Index of one taxonomy (the tags or the categories) of the visible Fragments. The names are interned to int ids, each
+ * name has a BitSet of the ordinals (the positions in the list of the visible Fragments) of its Fragments. So queries
+ * like "tagged java and performance, but not draft" are a few word-wise bit operations instead of intersecting lists:
+ * <pre>
+ * List&lt;Fragment&gt; result = fragments.getTagIndex().query().and("java", "performance").not("draft")
+ *         .getFragments(Fragments.byDate);
+ * </pre>
+ * The index is immutable and created once per FragmentsSnapshot.
+ * @author Alexander Brandt
+ */
+public final class TaxonomyIndex {
+    /** The visible Fragments, the position in this list is the ordinal of a Fragment. */
+    private final List<Fragment> fragments;
+    /** The id of each name. */
+    private final Map<String, Integer> ids = new HashMap<>();
+    /** The names by id. */
+    private final List<String> names = new ArrayList<>();
+    /** The ordinals of the Fragments of each name, with the id as index. */
+    private final List<BitSet> sets = new ArrayList<>();
+    /** The number of Fragments of each name, sorted by name. */
+    private final Map<String, Integer> counts;
+    /** The ordinals of the Fragments sorted in each registered order, with the comparator as key. */
+    private final Map<Comparator<Fragment>, int[]> orders = new IdentityHashMap<>();
+
+    /**
+     * Creates the index.
+     * @param fragments The visible Fragments.
+     * @param taxonomy Returns the tags or the categories of a Fragment (or null).
+     * @param sorted The visible Fragments sorted in each registered order, with the comparator as key.
+     */
+    TaxonomyIndex(List<Fragment> fragments, Function<Fragment, List<String>> taxonomy,
+                  Map<Comparator<Fragment>, List<Fragment>> sorted) {
+        this.fragments = fragments;
+        Map<Fragment, Integer> ordinals = new IdentityHashMap<>();
+        for (int ordinal = 0; ordinal < fragments.size(); ordinal++) {
+            Fragment fragment = fragments.get(ordinal);
+            ordinals.put(fragment, ordinal);
+            List<String> taxNames = taxonomy.apply(fragment);
+            if (taxNames == null) {
+                continue;
+            }
+            for (String taxName : taxNames) {
+                Integer id = ids.get(taxName);
+                if (id == null) {
+                    id = names.size();
+                    ids.put(taxName, id);
+                    names.add(taxName);
+                    sets.add(new BitSet(fragments.size()));
+                }
+                sets.get(id).set(ordinal);
+            }
+        }
+        Map<String, Integer> localCounts = new TreeMap<>();
+        for (int id = 0; id < names.size(); id++) {
+            localCounts.put(names.get(id), sets.get(id).cardinality());
+        }
+        this.counts = Collections.unmodifiableMap(localCounts);
+        for (Map.Entry<Comparator<Fragment>, List<Fragment>> entry : sorted.entrySet()) {
+            int[] order = new int[entry.getValue().size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = ordinals.get(entry.getValue().get(i));
+            }
+            orders.put(entry.getKey(), order);
+        }
+    }
+
+    /**
+     * Returns the id of a name.
+     * @param name The name of the tag or category.
+     * @return The id or -1, if no visible Fragment has this tag or category.
+     */
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of an id.
+     * @param id The id, see getId().
+     * @return The name of the tag or category.
+     */
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the number of visible Fragments of each tag or category, e.g. for a tag cloud.
+     * @return The unmodifiable map with the names as key, sorted by name.
+     */
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the number of visible Fragments of a tag or category.
+     * @param name The name of the tag or category.
+     * @return The number of visible Fragments.
+     */
+    public int getCount(String name) {
+        Integer count = counts.get(name);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Starts a query. It matches all visible Fragments, until it is restricted by and(), or() and not().
+     * @return The new query.
+     */
+    public Query query() {
+        BitSet all = new BitSet(fragments.size());
+        all.set(0, fragments.size());
+        return new Query(all);
+    }
+
+    private BitSet get(String name) {
+        Integer id = ids.get(name);
+        return id == null ? null : sets.get(id);
+    }
+
+    /**
+     * A query of the index. The methods restrict the matching Fragments and return this query, so they can be chained.
+     * A query must not be used by more than one thread.
+     */
+    public final class Query {
+        private final BitSet matches;
+
+        private Query(BitSet matches) {
+            this.matches = matches;
+        }
+
+        /**
+         * Keeps the Fragments, which have all of the given tags or categories.
+         * @param taxNames The names of the tags or categories.
+         * @return This query.
+         */
+        public Query and(String... taxNames) {
+            for (String taxName : taxNames) {
+                BitSet set = get(taxName);
+                if (set == null) {
+                    matches.clear();
+                    return this;
+                }
+                matches.and(set);
+            }
+            return this;
+        }
+
+        /**
+         * Keeps the Fragments, which have at least one of the given tags or categories.
+         * @param taxNames The names of the tags or categories.
+         * @return This query.
+         */
+        public Query or(String... taxNames) {
+            BitSet any = new BitSet(fragments.size());
+            for (String taxName : taxNames) {
+                BitSet set = get(taxName);
+                if (set != null) {
+                    any.or(set);
+                }
+            }
+            matches.and(any);
+            return this;
+        }
+
+        /**
+         * Removes the Fragments, which have any of the given tags or categories.
+         * @param taxNames The names of the tags or categories.
+         * @return This query.
+         */
+        public Query not(String... taxNames) {
+            for (String taxName : taxNames) {
+                BitSet set = get(taxName);
+                if (set != null) {
+                    matches.andNot(set);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Returns the number of matching Fragments.
+         * @return The number of matching Fragments.
+         */
+        public int count() {
+            return matches.cardinality();
+        }
+
+        /**
+         * Returns the matching Fragments in the order of the visible Fragments.
+         * @return The unmodifiable list of the matching Fragments.
+         */
+        public List<Fragment> getFragments() {
+            List<Fragment> result = new ArrayList<>(matches.cardinality());
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                result.add(fragments.get(ordinal));
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * Returns the matching Fragments in the given order. For a registered order (see Configuration.addOrder()) the
+         * precomputed order is used, otherwise the matching Fragments are sorted.
+         * @param orderBy The comparator defining the order.
+         * @return The unmodifiable list of the matching Fragments.
+         */
+        public List<Fragment> getFragments(Comparator<Fragment> orderBy) {
+            int[] order = orders.get(orderBy);
+            if (order == null) {
+                List<Fragment> result = new ArrayList<>(getFragments());
+                result.sort(orderBy);
+                return Collections.unmodifiableList(result);
+            }
+            List<Fragment> result = new ArrayList<>(matches.cardinality());
+            for (int ordinal : order) {
+                if (matches.get(ordinal)) {
+                    result.add(fragments.get(ordinal));
+                }
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
@@ -116,10 +116,29 @@ public class Utilities {
     }
 
     public static Map<String, Object> calculatePagination(int currentPage, int maxNoInPagination, long totalHits) {
+        // No pages for an empty list, as before the overload with the number of items per page
+        return calculatePaginationOfPages(currentPage, maxNoInPagination, (int) Math.ceil(totalHits / 10.));
+    }
+
+    /**
+     * Calculates the navigation model of a paginated list: the items "first", "previous", "next", "last" and the page
+     * links "1" to maxNoInPagination, each with "text", "url" (the page number) and "active".
+     * @param currentPage The current page, starting with 1.
+     * @param maxNoInPagination The maximum number of page links.
+     * @param totalHits The total number of items.
+     * @param itemsPerPage The number of items per page.
+     * @return The navigation model.
+     */
+    public static Map<String, Object> calculatePagination(int currentPage, int maxNoInPagination, long totalHits,
+                                                          int itemsPerPage) {
+        return calculatePaginationOfPages(currentPage, maxNoInPagination, getNumberOfPages(totalHits, itemsPerPage));
+    }
+
+    private static Map<String, Object> calculatePaginationOfPages(int currentPage, int maxNoInPagination,
+                                                                  int maxPagesFromHits) {
         Map<String, Object> result = new TreeMap<>();
 
         int currentPagination;
-        int maxPagesFromHits = (int) Math.ceil(totalHits / 10.);
 
         if (maxNoInPagination > maxPagesFromHits) {
             maxNoInPagination = maxPagesFromHits;
@@ -171,6 +190,16 @@ public class Utilities {
         return result;
     }
 
+    /**
+     * Returns the number of pages needed for the given number of items. There is always at least one (empty) page.
+     * @param totalHits The total number of items.
+     * @param itemsPerPage The number of items per page.
+     * @return The number of pages.
+     */
+    public static int getNumberOfPages(long totalHits, int itemsPerPage) {
+        return (int) Math.max(1, (totalHits + itemsPerPage - 1) / itemsPerPage);
+    }
+
     public static Map<String, Object> getItem(String text, boolean active, String url) {
         Map<String, Object> result = new TreeMap<>();
         result.put(TEXT_ID, text);
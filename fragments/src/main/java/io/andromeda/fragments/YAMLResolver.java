@@ -1,40 +1,40 @@
-/*
- * Copyright (C) 2017 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package io.andromeda.fragments;
-
-import org.yaml.snakeyaml.resolver.Resolver;
-
-/**
- * Custom YAMLResolver to configure SnakeYAML to only return strings.
- * @author Alexander Brandt
- */
-public class YAMLResolver extends Resolver {
-
-    /**
-     * Do not resolve any Tag. We want to have only strings so we can handle JSON and YAML in the same way.
-     */
-    @Override
-    protected void addImplicitResolvers() {
-        /**addImplicitResolver(Tag.BOOL, BOOL, "yYnNtTfFoO");
-           addImplicitResolver(Tags.FLOAT, FLOAT, "-+0123456789.");
-           addImplicitResolver(Tag.INT, INT, "-+0123456789");
-           addImplicitResolver(Tag.MERGE, MERGE, "<");
-           addImplicitResolver(Tag.NULL, NULL, "~nN\0");
-           addImplicitResolver(Tag.NULL, EMPTY, null);
-           addImplicitResolver(Tags.TIMESTAMP, TIMESTAMP, "0123456789");
-           addImplicitResolver(Tag.VALUE, VALUE, "="); */
-    }
-}
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments;
+
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Custom YAMLResolver to configure SnakeYAML to only return strings.
+ * @author Alexander Brandt
+ */
+public class YAMLResolver extends Resolver {
+
+    /**
+     * Do not resolve any Tag. We want to have only strings so we can handle JSON and YAML in the same way.
+     */
+    @Override
+    protected void addImplicitResolvers() {
+        /**addImplicitResolver(Tag.BOOL, BOOL, "yYnNtTfFoO");
+           addImplicitResolver(Tags.FLOAT, FLOAT, "-+0123456789.");
+           addImplicitResolver(Tag.INT, INT, "-+0123456789");
+           addImplicitResolver(Tag.MERGE, MERGE, "<");
+           addImplicitResolver(Tag.NULL, NULL, "~nN\0");
+           addImplicitResolver(Tag.NULL, EMPTY, null);
+           addImplicitResolver(Tags.TIMESTAMP, TIMESTAMP, "0123456789");
+           addImplicitResolver(Tag.VALUE, VALUE, "="); */
+    }
+}
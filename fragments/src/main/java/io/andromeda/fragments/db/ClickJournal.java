@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the clicks in an append-only journal of memory-mapped segment files instead of the database. Each click is a
+ * fixed-size record (id of the Fragment, number of clicks and a check value) written to the current segment without
+ * locking, so counting a click costs a few memory writes. Full segments are replaced by a new one. On every write of
+ * DBSupport the full segments are compacted into the totals file (written atomically) and deleted.
+ *
+ * The records are in the page cache as soon as they are written, so they survive a crash of the JVM. syncInterval
+ * defines, how often they are forced to the disk: 0 after every click, -1 only when closing, otherwise every
+ * syncInterval milliseconds. On startup the totals file is read and the remaining segments are replayed, incomplete
+ * records (e.g. of a crash while writing them) are skipped.
+ *
+ * The files in the directory: "names" (the filenames of the Fragments, the position is the id), "totals" (the compacted
+ * clicks and the sequence number of the last compacted segment) and "clicks-[sequence].journal" (the segments).
+ * @author Alexander Brandt
+ */
+public final class ClickJournal implements ClickStore {
+    /** The logger instance for this class. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClickJournal.class);
+
+    /** The size of a record in bytes. */
+    static final int RECORD_SIZE = 16;
+    /** Mixed into the check value, so an unwritten (zero) record is invalid. */
+    private static final long MAGIC = 0x467261676D656E74L;
+    private static final String NAMES = "names";
+    private static final String TOTALS = "totals";
+    private static final String SEGMENT_PREFIX = "clicks-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    /** A segment file. */
+    private static final class Segment {
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private final int records;
+        /** The next free record, may grow beyond the number of records when the segment is full. */
+        private final AtomicInteger next = new AtomicInteger();
+        /** The number of clicks being written right now. */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private Segment(long sequence, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+            this.records = buffer.capacity() / RECORD_SIZE;
+            if (buffer.isReadOnly()) {
+                // A segment of a previous run, all records are taken
+                next.set(records);
+            }
+        }
+    }
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final long syncInterval;
+    private final FileChannel namesChannel;
+    /** The ids of the filenames. */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    /** The filenames by id, guarded by this. */
+    private final List<String> names = new ArrayList<>();
+    /** The compacted clicks with the filename as key, guarded by this. */
+    private final Map<String, Long> compacted = new HashMap<>();
+    /** The sequence number of the last compacted segment, guarded by this. */
+    private long compactedSequence;
+    /** The full segments, which are not compacted yet, guarded by this. */
+    private final List<Segment> closed = new ArrayList<>();
+    /** The segment receiving the clicks. */
+    private volatile Segment active;
+    private final ScheduledExecutorService syncer;
+
+    /**
+     * Opens the journal in the given directory, it is created if necessary.
+     * @param directory The directory of the journal files.
+     * @param segmentRecords The number of records (clicks) per segment file.
+     * @param syncInterval The time in milliseconds between forcing the clicks to the disk, 0 for every click and -1
+     *                     only on close.
+     * @throws UncheckedIOException If the journal cannot be opened.
+     */
+    public ClickJournal(Path directory, int segmentRecords, long syncInterval) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.syncInterval = syncInterval;
+        try {
+            Files.createDirectories(directory);
+            namesChannel = FileChannel.open(directory.resolve(NAMES), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            readNames();
+            readTotals();
+            long last = compactedSequence;
+            for (long sequence : getSegmentSequences()) {
+                if (sequence <= compactedSequence) {
+                    // Left over by a crash after writing the totals
+                    Files.deleteIfExists(getSegmentPath(sequence));
+                } else {
+                    closed.add(new Segment(sequence, map(sequence, FileChannel.MapMode.READ_ONLY)));
+                    last = sequence;
+                }
+            }
+            active = new Segment(last + 1, map(last + 1, FileChannel.MapMode.READ_WRITE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (syncInterval > 0) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fragments-journal-" + directory.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    private Path getSegmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> getSegmentSequences() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String filename = path.getFileName().toString();
+                result.add(Long.parseLong(filename.substring(SEGMENT_PREFIX.length(),
+                        filename.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    private MappedByteBuffer map(long sequence, FileChannel.MapMode mode) throws IOException {
+        Path path = getSegmentPath(sequence);
+        boolean readOnly = mode == FileChannel.MapMode.READ_ONLY;
+        try (FileChannel channel = readOnly ? FileChannel.open(path, StandardOpenOption.READ)
+                : FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // The mapping stays valid after closing the channel
+            return channel.map(mode, 0, readOnly ? channel.size() : (long) segmentRecords * RECORD_SIZE);
+        }
+    }
+
+    /** Reads the names, an incomplete name at the end (written while crashing) is cut off. */
+    private void readNames() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) namesChannel.size());
+        while (bytes.hasRemaining() && namesChannel.read(bytes, bytes.position()) >= 0) {
+            // read everything
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+        long valid = 0;
+        try {
+            while (valid < bytes.capacity()) {
+                String name = in.readUTF();
+                ids.put(name, names.size());
+                names.add(name);
+                valid = bytes.capacity() - in.available();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Cutting off the incomplete end of the names of the click journal {}.", directory);
+        }
+        namesChannel.truncate(valid);
+        namesChannel.position(valid);
+    }
+
+    private void readTotals() throws IOException {
+        Path path = directory.resolve(TOTALS);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)))) {
+            compactedSequence = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                compacted.put(in.readUTF(), in.readLong());
+            }
+        }
+    }
+
+    private static long check(int id, int clicks) {
+        return (((long) id << 32) | (clicks & 0xFFFFFFFFL)) ^ MAGIC;
+    }
+
+    /**
+     * Adds the valid records of a segment.
+     * @param segment The segment.
+     * @param result The clicks with the filename as key.
+     */
+    private void replay(Segment segment, Map<String, Long> result) {
+        ByteBuffer buffer = segment.buffer;
+        int records = Math.min(segment.records, segment.next.get());
+        for (int record = 0; record < records; record++) {
+            int offset = record * RECORD_SIZE;
+            int id = buffer.getInt(offset);
+            int clicks = buffer.getInt(offset + 4);
+            if (buffer.getLong(offset + 8) == check(id, clicks) && id >= 0 && id < names.size()) {
+                result.merge(names.get(id), (long) clicks, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Returns the compacted clicks plus the clicks of the segments, which are not compacted yet.
+     * @return The number of clicks with the filename as key.
+     */
+    @Override
+    public synchronized Map<String, Long> load() {
+        Map<String, Long> result = new HashMap<>(compacted);
+        for (Segment segment : closed) {
+            replay(segment, result);
+        }
+        replay(active, result);
+        return result;
+    }
+
+    private int getId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                try {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    new DataOutputStream(bytes).writeUTF(name);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        namesChannel.write(buffer);
+                    }
+                    // The name must be on the disk before any click referring to it
+                    namesChannel.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                id = names.size();
+                names.add(name);
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Appends a click record to the current segment.
+     * @param name The filename of the Fragment.
+     */
+    @Override
+    public void addClick(String name) {
+        int id = getId(name);
+        while (true) {
+            Segment segment = active;
+            segment.writers.incrementAndGet();
+            try {
+                int record = segment.next.getAndIncrement();
+                if (record < segment.records) {
+                    int offset = record * RECORD_SIZE;
+                    segment.buffer.putInt(offset, id);
+                    segment.buffer.putInt(offset + 4, 1);
+                    segment.buffer.putLong(offset + 8, check(id, 1));
+                    if (syncInterval == 0) {
+                        segment.buffer.force();
+                    }
+                    return;
+                }
+            } finally {
+                segment.writers.decrementAndGet();
+            }
+            rotate(segment);
+        }
+    }
+
+    /** Replaces the full segment by a new one. */
+    private synchronized void rotate(Segment full) {
+        if (active != full) {
+            return;
+        }
+        try {
+            active = new Segment(full.sequence + 1, map(full.sequence + 1, FileChannel.MapMode.READ_WRITE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        closed.add(full);
+    }
+
+    /**
+     * Forces the records of the segments, which are not compacted yet, to the disk. Full segments are forced here and
+     * not in rotate(), because clicks can still be written to them.
+     */
+    void sync() {
+        try {
+            force();
+        } catch (RuntimeException e) {
+            LOGGER.error("Error syncing the click journal {}: {}", directory, e.toString());
+        }
+    }
+
+    /** Forces the full segments, which are not compacted yet, and the current segment to the disk. */
+    private void force() {
+        List<Segment> segments;
+        synchronized (this) {
+            segments = new ArrayList<>(closed);
+        }
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        active.buffer.force();
+    }
+
+    /**
+     * Compacts the full segments, the clicks were already written to the journal by addClick().
+     * @param deltas Ignored.
+     */
+    @Override
+    public void write(Map<String, Long> deltas) {
+        compact();
+    }
+
+    /**
+     * Adds the records of the full segments to the totals, writes the totals atomically and deletes the segments.
+     * Segments with clicks being written right now are compacted next time.
+     */
+    synchronized void compact() {
+        List<Segment> segments = new ArrayList<>();
+        for (Segment segment : closed) {
+            if (segment.writers.get() > 0) {
+                break;
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        Map<String, Long> result = new TreeMap<>(compacted);
+        for (Segment segment : segments) {
+            segment.buffer.force();
+            replay(segment, result);
+        }
+        long sequence = segments.get(segments.size() - 1).sequence;
+        try {
+            writeTotals(sequence, result);
+            closed.removeAll(segments);
+            for (Segment segment : segments) {
+                Files.deleteIfExists(getSegmentPath(segment.sequence));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns true, if the journal has a totals file, i.e. it was compacted or seeded before.
+     * @return True, if the journal has a totals file.
+     */
+    public synchronized boolean hasTotals() {
+        return Files.exists(directory.resolve(TOTALS));
+    }
+
+    /**
+     * Adds clicks to the totals and writes them, e.g. the clicks of the statistics table, when the journal replaces it.
+     * The segments are not changed.
+     * @param clicks The number of clicks with the filename of the Fragment as key.
+     * @throws UncheckedIOException If the totals cannot be written.
+     */
+    public synchronized void seed(Map<String, Long> clicks) {
+        Map<String, Long> result = new TreeMap<>(compacted);
+        for (Map.Entry<String, Long> entry : clicks.entrySet()) {
+            result.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        try {
+            writeTotals(compactedSequence, result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the totals file atomically and replaces the compacted clicks.
+     * @param sequence The sequence number of the last compacted segment.
+     * @param result The compacted clicks with the filename as key.
+     */
+    private void writeTotals(long sequence, Map<String, Long> result) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(sequence);
+        out.writeInt(result.size());
+        for (Map.Entry<String, Long> entry : result.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        Path temp = directory.resolve(TOTALS + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(TOTALS), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        compacted.clear();
+        compacted.putAll(result);
+        compactedSequence = sequence;
+    }
+
+    /**
+     * Returns the number of segment files, which are not compacted yet (including the current one).
+     * @return The number of segment files.
+     */
+    synchronized int getNumberOfSegments() {
+        return closed.size() + 1;
+    }
+
+    /**
+     * Stops syncing and forces the segments, which are not compacted yet, to the disk.
+     */
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        force();
+        try {
+            namesChannel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Error closing the names of the click journal {}: {}", directory, e.toString());
+        }
+    }
+}
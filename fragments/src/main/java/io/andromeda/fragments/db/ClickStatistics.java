@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * The clicks of the Fragments in time buckets: per minute for the last hour, per hour for the last 7 days and per day
+ * for the last 30 days. Each resolution is a ring buffer per Fragment, a slot holds the number of the bucket and its
+ * clicks in one long, so a click is a single compare-and-set without locking. A query sums the buckets of the window
+ * in the finest resolution covering it, so it takes O(buckets) per Fragment. The top Fragments of a window are computed
+ * at most once per minute.
+ * @author Alexander Brandt
+ */
+public final class ClickStatistics {
+    /** The last 24 hours. */
+    public static final long DAY = 24 * 60 * 60 * 1000L;
+    /** The last 7 days. */
+    public static final long WEEK = 7 * DAY;
+
+    /** The time buckets. */
+    enum Resolution {
+        MINUTE(60 * 1000L, 60),
+        HOUR(60 * 60 * 1000L, 7 * 24),
+        DAY(24 * 60 * 60 * 1000L, 30);
+
+        private final long millis;
+        private final int buckets;
+
+        Resolution(long millis, int buckets) {
+            this.millis = millis;
+            this.buckets = buckets;
+        }
+    }
+
+    /** A ring buffer of buckets, each slot holds the number of the bucket (high int) and its clicks (low int). */
+    static final class Ring {
+        private final AtomicLongArray slots;
+
+        Ring(int size) {
+            slots = new AtomicLongArray(size);
+        }
+
+        void add(long bucket, long clicks) {
+            int slot = (int) (bucket % slots.length());
+            while (true) {
+                long value = slots.get(slot);
+                long slotBucket = value >>> 32;
+                long update;
+                if (slotBucket == bucket) {
+                    update = value + clicks;
+                } else if (slotBucket < bucket) {
+                    // The slot still holds an old bucket, start the new one
+                    update = (bucket << 32) | clicks;
+                } else {
+                    // Older than the oldest bucket kept
+                    return;
+                }
+                if (slots.compareAndSet(slot, value, update)) {
+                    return;
+                }
+            }
+        }
+
+        long get(long bucket) {
+            long value = slots.get((int) (bucket % slots.length()));
+            return value >>> 32 == bucket ? value & 0xFFFFFFFFL : 0;
+        }
+
+        long sum(long fromBucket, long toBucket) {
+            long sum = 0;
+            for (long bucket = Math.max(fromBucket, toBucket - slots.length() + 1); bucket <= toBucket; bucket++) {
+                sum += get(bucket);
+            }
+            return sum;
+        }
+    }
+
+    /** The buckets of one Fragment. */
+    static final class Buckets {
+        private final Ring[] rings = new Ring[Resolution.values().length];
+        /** True, if there were clicks since the last rollup. */
+        private final AtomicBoolean changed = new AtomicBoolean();
+
+        Buckets() {
+            for (Resolution resolution : Resolution.values()) {
+                rings[resolution.ordinal()] = new Ring(resolution.buckets);
+            }
+        }
+
+        Ring getRing(Resolution resolution) {
+            return rings[resolution.ordinal()];
+        }
+
+        boolean getAndResetChanged() {
+            return changed.getAndSet(false);
+        }
+
+        void setChanged() {
+            changed.set(true);
+        }
+    }
+
+    /** The top of a window, computed in the given minute. */
+    private static final class Top {
+        private final long minute;
+        private final List<String> names;
+
+        private Top(long minute, List<String> names) {
+            this.minute = minute;
+            this.names = names;
+        }
+    }
+
+    private final LongSupplier clock;
+    /** The buckets with the name of the Fragment as key. */
+    private final Map<String, Buckets> buckets = new ConcurrentHashMap<>();
+    /** The top of each window, with the window and the number of Fragments as key. */
+    private final Map<List<Long>, Top> tops = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the empty statistics.
+     * @param clock Returns the current time in milliseconds.
+     */
+    ClickStatistics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    private Buckets getBuckets(String name) {
+        Buckets result = buckets.get(name);
+        if (result == null) {
+            result = buckets.computeIfAbsent(name, key -> new Buckets());
+        }
+        return result;
+    }
+
+    /**
+     * Counts a click at the current time.
+     * @param name The name of the Fragment.
+     */
+    void addClick(String name) {
+        long now = clock.getAsLong();
+        Buckets fragmentBuckets = getBuckets(name);
+        for (Resolution resolution : Resolution.values()) {
+            fragmentBuckets.getRing(resolution).add(now / resolution.millis, 1);
+        }
+        fragmentBuckets.setChanged();
+    }
+
+    /**
+     * Adds the clicks of an hour, e.g. read from the database. The hour is added to the hour and day buckets.
+     * @param name The name of the Fragment.
+     * @param hour The number of the hour since the epoch.
+     * @param clicks The clicks of the hour.
+     */
+    void addHour(String name, long hour, long clicks) {
+        Buckets fragmentBuckets = getBuckets(name);
+        fragmentBuckets.getRing(Resolution.HOUR).add(hour, clicks);
+        fragmentBuckets.getRing(Resolution.DAY).add(hour * Resolution.HOUR.millis / Resolution.DAY.millis, clicks);
+    }
+
+    /**
+     * Returns the names of the Fragments, which had clicks since the last call of this method.
+     * @return The names of the changed Fragments.
+     */
+    List<String> getChanged() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Buckets> entry : buckets.entrySet()) {
+            if (entry.getValue().getAndResetChanged()) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the clicks of a Fragment in an hour of the last 7 days.
+     * @param name The name of the Fragment.
+     * @param hour The number of the hour since the epoch.
+     * @return The number of clicks.
+     */
+    long getHour(String name, long hour) {
+        Buckets fragmentBuckets = buckets.get(name);
+        return fragmentBuckets == null ? 0 : fragmentBuckets.getRing(Resolution.HOUR).get(hour);
+    }
+
+    /**
+     * Marks the buckets of a Fragment as changed, e.g. when writing them failed.
+     * @param name The name of the Fragment.
+     */
+    void setChanged(String name) {
+        getBuckets(name).setChanged();
+    }
+
+    /**
+     * Returns the current hour.
+     * @return The number of the current hour since the epoch.
+     */
+    long getCurrentHour() {
+        return clock.getAsLong() / Resolution.HOUR.millis;
+    }
+
+    /**
+     * Returns the number of clicks of a Fragment in the given window, e.g. DAY for the last 24 hours. The window is
+     * rounded up to the buckets of the finest resolution covering it, windows longer than 30 days are cut.
+     * @param name The name of the Fragment.
+     * @param window The length of the window in milliseconds.
+     * @return The number of clicks.
+     */
+    public long getClicks(String name, long window) {
+        Buckets fragmentBuckets = buckets.get(name);
+        return fragmentBuckets == null ? 0 : getClicks(fragmentBuckets, window, clock.getAsLong());
+    }
+
+    private static long getClicks(Buckets fragmentBuckets, long window, long now) {
+        Resolution resolution = Resolution.DAY;
+        for (Resolution candidate : Resolution.values()) {
+            if (window <= candidate.millis * candidate.buckets) {
+                resolution = candidate;
+                break;
+            }
+        }
+        long to = now / resolution.millis;
+        long count = Math.max(1, (window + resolution.millis - 1) / resolution.millis);
+        return fragmentBuckets.getRing(resolution).sum(to - count + 1, to);
+    }
+
+    /**
+     * Returns the Fragments with the most clicks in the given window, e.g. DAY for the last 24 hours. The result is
+     * computed at most once per minute and window.
+     * @param window The length of the window in milliseconds.
+     * @param numberOfFragments The maximum number of Fragments, Integer.MAX_VALUE for all Fragments with clicks.
+     * @return The names of the Fragments with clicks in the window, most clicks first.
+     */
+    public List<String> getTop(long window, int numberOfFragments) {
+        long now = clock.getAsLong();
+        long minute = now / Resolution.MINUTE.millis;
+        List<Long> key = Arrays.asList(window, (long) numberOfFragments);
+        Top top = tops.get(key);
+        if (top == null || top.minute != minute) {
+            top = new Top(minute, computeTop(window, numberOfFragments, now));
+            tops.put(key, top);
+        }
+        return top.names;
+    }
+
+    private List<String> computeTop(long window, int numberOfFragments, long now) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, Buckets> entry : buckets.entrySet()) {
+            long clicks = getClicks(entry.getValue(), window, now);
+            if (clicks > 0) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), clicks));
+            }
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<String> result = new ArrayList<>(Math.min(numberOfFragments, entries.size()));
+        for (int i = 0; i < entries.size() && i < numberOfFragments; i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
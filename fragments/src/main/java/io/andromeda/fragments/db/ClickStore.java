@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import java.util.Map;
+
+/**
+ * Stores the number of clicks per Fragment for DBSupport. DBSupport counts the clicks in memory, the store only
+ * persists them: either the statistics table (the default) or a ClickJournal, see DBConfiguration.setJournal().
+ * Errors are reported with (unchecked) exceptions.
+ * @author Alexander Brandt
+ */
+public interface ClickStore {
+    /**
+     * Reads the number of clicks of all Fragments. Called once on startup.
+     * @return The number of clicks with the filename of the Fragment as key.
+     */
+    Map<String, Long> load();
+
+    /**
+     * Records a click. Called on the request thread, so it must not block.
+     * @param name The filename of the Fragment.
+     */
+    void addClick(String name);
+
+    /**
+     * Persists the clicks counted since the last call. Called by the writing thread of DBSupport.
+     * @param deltas The new clicks with the filename of the Fragment as key.
+     */
+    void write(Map<String, Long> deltas);
+
+    /**
+     * Releases the resources of the store. The clicks must have been written before.
+     */
+    void close();
+}
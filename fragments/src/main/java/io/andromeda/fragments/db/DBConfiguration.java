@@ -1,74 +1,183 @@
-/*
- * Copyright (C) 2017 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package io.andromeda.fragments.db;
-
-import io.andromeda.fragments.Fragments;
-
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
-/**
- * @author Alexander Brandt
- */
-public class DBConfiguration {
-    //private final String driver = "org.h2.jdbcx.JdbcDataSource";
-    private final String driver = "org.h2.Driver";
-    private String connection = "jdbc:h2:";
-    private final String username = "fragments";
-    private String password;
-    private final String name;
-    private boolean resetDB = false;
-
-    public DBConfiguration(Fragments fragments, String password) {
-        String nameTemplate = "fragments_clicks_";
-        name = nameTemplate + fragments.getName();
-        Path path = Paths.get(fragments.getDataDirectory()).normalize().toAbsolutePath();
-        this.password = password;
-        String dbFileLocation = path.getParent().toString() + "/";
-        /* Append the name of the Fragments instance to the connection path to be able to distinguish between different
-         * databases. */
-        dbFileLocation += fragments.getName();
-        connection += dbFileLocation;
-    }
-
-    public String getDriver() {
-        return driver;
-    }
-
-    public String getConnection() {
-        return connection;
-    }
-
-    public String getUsername() {
-        return username;
-    }
-
-    public String getPassword() {
-        return password;
-    }
-
-    public String getDBName() {
-        return name;
-    }
-
-    public boolean getResetDB() {
-        return resetDB;
-    }
-
-    public void setResetDB(boolean resetDB) {
-        this.resetDB = resetDB;
-    }
-}
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import io.andromeda.fragments.Fragments;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * @author Alexander Brandt
+ */
+public class DBConfiguration {
+    //private final String driver = "org.h2.jdbcx.JdbcDataSource";
+    private final String driver = "org.h2.Driver";
+    private String connection = "jdbc:h2:";
+    private final String username = "fragments";
+    private String password;
+    private final String name;
+    private final String tableName;
+    private boolean resetDB = false;
+    /** The time in milliseconds between two writes of the clicks. */
+    private long flushInterval = 1000;
+    /** The number of clicks, after which the clicks are written before the flush interval is over. */
+    private long flushThreshold = 1000;
+    /** The number of Fragments with the most clicks kept in memory. */
+    private int topFragments = 10;
+    /** The directory of the click journal or null to store the clicks in the statistics table. */
+    private Path journal;
+    /** The number of clicks per segment file of the click journal. */
+    private int journalSegmentRecords = 1024 * 1024;
+    /** The time in milliseconds between forcing the click journal to the disk. */
+    private long journalSyncInterval = 1000;
+
+    public DBConfiguration(Fragments fragments, String password) {
+        String nameTemplate = "fragments_clicks_";
+        name = nameTemplate + fragments.getName();
+        tableName = "fragments_statistics_" + fragments.getName();
+        Path path = Paths.get(fragments.getDataDirectory()).normalize().toAbsolutePath();
+        this.password = password;
+        String dbFileLocation = path.getParent().toString() + "/";
+        /* Append the name of the Fragments instance to the connection path to be able to distinguish between different
+         * databases. */
+        dbFileLocation += fragments.getName();
+        connection += dbFileLocation;
+    }
+
+    public String getDriver() {
+        return driver;
+    }
+
+    public String getConnection() {
+        return connection;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Returns the name of the clicks table of previous versions (one row per click). It is migrated to the statistics
+     * table, see getTableName().
+     * @return The name of the clicks table of previous versions.
+     */
+    public String getDBName() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the table with the number of clicks per Fragment.
+     * @return The name of the statistics table.
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Returns the name of the table with the number of clicks per Fragment and hour.
+     * @return The name of the table with the clicks per hour.
+     */
+    public String getHourlyTableName() {
+        return tableName + "_hourly";
+    }
+
+    public int getTopFragments() {
+        return topFragments;
+    }
+
+    /**
+     * Sets the number of Fragments with the most clicks kept in memory, DBSupport.getTopFragments() returns at most
+     * this number of Fragments. Must be set before enabling the database.
+     * @param topFragments The number of Fragments.
+     */
+    public void setTopFragments(int topFragments) {
+        this.topFragments = topFragments;
+    }
+
+    public Path getJournal() {
+        return journal;
+    }
+
+    /**
+     * Stores the total clicks in a ClickJournal in the given directory instead of the statistics table. The clicks
+     * per hour are still written to the database. Must be set before enabling the database.
+     * @param journal The directory of the journal or null to use the statistics table.
+     */
+    public void setJournal(Path journal) {
+        this.journal = journal;
+    }
+
+    public int getJournalSegmentRecords() {
+        return journalSegmentRecords;
+    }
+
+    /**
+     * Sets the number of clicks per segment file of the click journal, each click takes 16 bytes.
+     * @param journalSegmentRecords The number of clicks per segment file.
+     */
+    public void setJournalSegmentRecords(int journalSegmentRecords) {
+        this.journalSegmentRecords = journalSegmentRecords;
+    }
+
+    public long getJournalSyncInterval() {
+        return journalSyncInterval;
+    }
+
+    /**
+     * Sets the time between forcing the click journal to the disk: 0 after every click, -1 only when closing.
+     * @param journalSyncInterval The time in milliseconds.
+     */
+    public void setJournalSyncInterval(long journalSyncInterval) {
+        this.journalSyncInterval = journalSyncInterval;
+    }
+
+    public boolean getResetDB() {
+        return resetDB;
+    }
+
+    public void setResetDB(boolean resetDB) {
+        this.resetDB = resetDB;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the time between two writes of the clicks to the database. Must be set before enabling the database.
+     * @param flushInterval The time in milliseconds.
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public long getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * Sets the number of clicks, after which the clicks are written before the flush interval is over.
+     * @param flushThreshold The number of clicks.
+     */
+    public void setFlushThreshold(long flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+}
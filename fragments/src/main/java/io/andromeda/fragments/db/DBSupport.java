@@ -1,231 +1,607 @@
-/*
- * Copyright (C) 2017 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package io.andromeda.fragments.db;
-
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import io.andromeda.fragments.Fragment;
-import io.andromeda.fragments.Fragments;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.sql2o.Connection;
-import org.sql2o.Query;
-import org.sql2o.Sql2o;
-
-import javax.sql.DataSource;
-import java.util.Collections;
-import java.util.List;
-
-/**
- * @author Alexander Brandt
- */
-public class DBSupport {
-    /**
-     * The logger instance for this class.
-     */
-    private static final Logger LOGGER = LoggerFactory.getLogger(DBSupport.class);
-
-    private int defaultTopFragments = 5;
-    private DBConfiguration configuration;
-    private String tableName;
-
-    private Sql2o sql2o;
-
-    public DBSupport(DBConfiguration configuration, Fragments fragments) {
-        this.configuration = configuration;
-        initialize();
-    }
-
-    public final boolean initialize() {
-        try {
-            Class.forName("org.h2.Driver");
-        } catch (ClassNotFoundException e) {
-            LOGGER.error(e.toString());
-        }
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setDataSourceClassName("org.h2.jdbcx.JdbcDataSource");
-        //hikariConfig.setDriverClassName("org.h2.Driver");
-        hikariConfig.setUsername(configuration.getUsername());
-        hikariConfig.setPassword(configuration.getPassword());
-        hikariConfig.addDataSourceProperty("URL", configuration.getConnection());
-        //hikariConfig.addDataSourceProperty("database", configuration.getDBName());
-        hikariConfig.setAutoCommit(false);
-
-        DataSource dataSource = new HikariDataSource(hikariConfig);
-        sql2o = new Sql2o(dataSource);
-
-        if (configuration.getResetDB()) {
-            dropTable();
-        }
-        return createTable();
-    }
-
-    public boolean executeQuery(String queryString) {
-        boolean result = true;
-
-        try (Connection con = sql2o.open()) {
-            try(Query query = con.createQuery(queryString)) {
-                query.executeUpdate().commit();
-            } catch (Exception exception) {
-                LOGGER.error("Exception: {}", exception);
-                result = false;
-            }
-        } catch (Exception exception) {
-            LOGGER.error("Exception: {}", exception);
-            result = false;
-        }
-        return result;
-    }
-
-    public boolean createTable() {
-        String createTable = String.format("CREATE TABLE IF NOT exists %s(id int primary key, name varchar(1000), clicks bigint)", configuration.getDBName());
-        return executeQuery(createTable);
-    }
-
-    public boolean dropTable() {
-        String dropTable = String.format("DROP TABLE IF exists %s CASCADE;", configuration.getDBName());
-        return executeQuery(dropTable);
-    }
-
-    public long addClick(Fragment fragment) {
-        long clicks = getNumberOfClicks(fragment);
-        String sqlInsert = String.format("insert into %s(name, clicks) values (:name, :clicks)", configuration.getDBName());
-        try (Connection con = sql2o.open()) {
-            con.createQuery(sqlInsert)
-                    .addParameter("name", fragment.getFilename())
-                    .addParameter("clicks", ++clicks)
-                    .executeUpdate()
-                    .getKey();
-            con.commit();
-        } catch (Exception exception) {
-            LOGGER.error("Exception: {}", exception);
-        }
-
-        return clicks;
-    }
-
-    public long getNumberOfClicks(Fragment fragment) {
-        long clicks = 0;
-        String sql = String.format("SELECT clicks FROM %s where name = ':name'", configuration.getDBName());
-        try (Connection con = sql2o.open()) {
-             clicks = con.createQuery(sql)
-                    .addParameter("name", fragment.getFilename())
-                    .executeScalar(Long.class);
-        } catch (Exception exception) {
-            LOGGER.error("Exception getting number of clicks: {}", exception);
-        }
-        return clicks;
-    }
-
-    public List<Fragment> getTopFragments() {
-        return getTopFragments(defaultTopFragments);
-    }
-
-    public List<Fragment> getTopFragments(int numberOfTopFragments) {
-        //String sql = "SELECT id FROM author WHERE p_username = ':p_username'";
-
-        /*List<Author> author = new ArrayList<Author>();
-        try (Connection con = sql2o.open()) {
-            author = con.createQuery(sql)
-                    .addParameter("p_username", username)
-                    .executeAndFetch(Author.class);
-        } catch (Exception exception) {
-            LOGGER.error("Exception: " + exception);
-        }
-
-        if (author.isEmpty()) {
-            LOGGER.error("Author is empty!");
-            return false;
-        } else if (author.size() > 1) {
-            LOGGER.error("Author size is greater than 1 (!" + author.size() + ") for username=\"" + username + "\"!");
-            return false;
-        }
-        Author a = author.get(0);
-        return true;*/
-
-        return Collections.emptyList();
-    }
-
-    /*private static void insertWithPreparedStatement() throws SQLException {
-        Connection connection = getDBConnection();
-        PreparedStatement createPreparedStatement = null;
-        PreparedStatement insertPreparedStatement = null;
-        PreparedStatement selectPreparedStatement = null;
-
-        String CreateQuery = "CREATE TABLE PERSON(id int primary key, name varchar(255))";
-        String InsertQuery = "INSERT INTO PERSON" + "(id, name) values" + "(?,?)";
-        String SelectQuery = "select * from PERSON";
-        try {
-            connection.setAutoCommit(false);
-
-            createPreparedStatement = connection.prepareStatement(CreateQuery);
-            createPreparedStatement.executeUpdate();
-            createPreparedStatement.close();
-
-            insertPreparedStatement = connection.prepareStatement(InsertQuery);
-            insertPreparedStatement.setInt(1, 1);
-            insertPreparedStatement.setString(2, "Jose");
-            insertPreparedStatement.executeUpdate();
-            insertPreparedStatement.close();
-
-            selectPreparedStatement = connection.prepareStatement(SelectQuery);
-            ResultSet rs = selectPreparedStatement.executeQuery();
-            System.out.println("H2 Database inserted through PreparedStatement");
-            while (rs.next()) {
-                System.out.println("Id "+rs.getInt("id")+" Name "+rs.getString("name"));
-            }
-            selectPreparedStatement.close();
-
-            connection.commit();
-        } catch (SQLException e) {
-            System.out.println("Exception Message " + e.getLocalizedMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            connection.close();
-        }
-    }*/
-
-    /*private static void insertWithStatement() throws SQLException {
-        Connection connection = getDBConnection();
-        Statement stmt = null;
-        try {
-            connection.setAutoCommit(false);
-            stmt = connection.createStatement();
-            stmt.execute("CREATE TABLE PERSON(id int primary key, name varchar(255))");
-            stmt.execute("INSERT INTO PERSON(id, name) VALUES(1, 'Anju')");
-            stmt.execute("INSERT INTO PERSON(id, name) VALUES(2, 'Sonia')");
-            stmt.execute("INSERT INTO PERSON(id, name) VALUES(3, 'Asha')");
-
-            ResultSet rs = stmt.executeQuery("select * from PERSON");
-            System.out.println("H2 Database inserted through Statement");
-            while (rs.next()) {
-                System.out.println("Id "+rs.getInt("id")+" Name "+rs.getString("name"));
-            }
-            stmt.close();
-            connection.commit();
-        } catch (SQLException e) {
-            System.out.println("Exception Message " + e.getLocalizedMessage());
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            connection.close();
-        }
-    }*/
-
-
-
-}
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.andromeda.fragments.Fragment;
+import io.andromeda.fragments.Fragments;
+import io.andromeda.fragments.FragmentsSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import org.sql2o.data.Row;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the clicks of the Fragments. The clicks are counted in memory, so counting a click and reading the number of
+ * clicks never wait for the database. A background thread writes the new clicks in batches to the ClickStore (the
+ * statistics table or a ClickJournal), every flushInterval milliseconds and whenever flushThreshold clicks were counted
+ * since the last write. close() writes the remaining clicks.
+ * @author Alexander Brandt
+ */
+public class DBSupport {
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DBSupport.class);
+
+    private DBConfiguration configuration;
+    private final Fragments fragments;
+    private String tableName;
+
+    private HikariDataSource dataSource;
+    private Sql2o sql2o;
+
+    /** Stores the total clicks, null if the tables could not be created. */
+    private ClickStore store;
+    /** The clicks of the Fragments, with the filename as key. */
+    private final Map<String, Clicks> clicks = new ConcurrentHashMap<>();
+    /** The number of clicks since the last write. Striped like the clicks, it is only compared to the threshold. */
+    private final LongAdder unflushed = new LongAdder();
+    /** True, if a write was requested, because the threshold was reached. */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    /** Writes the clicks to the database. */
+    private ScheduledExecutorService flusher;
+    /** The clicks in time buckets. */
+    private ClickStatistics statistics = new ClickStatistics(System::currentTimeMillis);
+    /** The visible Fragments by filename and their top, for the snapshot they were taken from. */
+    private volatile FragmentsByFilename fragmentsByFilename;
+
+    /** The clicks of one Fragment. */
+    private static final class Clicks {
+        /** All clicks, including the ones already in the database. Striped, so clicks don't contend. */
+        private final LongAdder total = new LongAdder();
+        /** The part of the total already written to the database, only changed while writing. */
+        private long flushed;
+    }
+
+    /**
+     * The visible Fragments of a snapshot by filename and the filenames of the visible Fragments with the most clicks.
+     * The top only contains visible Fragments, so removed or hidden Fragments don't take the places of visible ones.
+     */
+    private static final class FragmentsByFilename {
+        private final FragmentsSnapshot snapshot;
+        private final Map<String, Fragment> fragments;
+        private final TopClicks top;
+
+        private FragmentsByFilename(FragmentsSnapshot snapshot, Map<String, Fragment> fragments, TopClicks top) {
+            this.snapshot = snapshot;
+            this.fragments = fragments;
+            this.top = top;
+        }
+    }
+
+    public DBSupport(DBConfiguration configuration, Fragments fragments) {
+        this.configuration = configuration;
+        this.fragments = fragments;
+        initialize();
+    }
+
+    public final boolean initialize() {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            LOGGER.error(e.toString());
+        }
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setDataSourceClassName("org.h2.jdbcx.JdbcDataSource");
+        //hikariConfig.setDriverClassName("org.h2.Driver");
+        hikariConfig.setUsername(configuration.getUsername());
+        hikariConfig.setPassword(configuration.getPassword());
+        hikariConfig.addDataSourceProperty("URL", configuration.getConnection());
+        //hikariConfig.addDataSourceProperty("database", configuration.getDBName());
+        hikariConfig.setAutoCommit(false);
+
+        dataSource = new HikariDataSource(hikariConfig);
+        sql2o = new Sql2o(dataSource);
+
+        if (configuration.getResetDB()) {
+            dropTable();
+        }
+        boolean result = createTable() && migrateClicks() && openStore() && loadClicks() && loadStatistics();
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fragments-clicks-" + configuration.getDBName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, configuration.getFlushInterval(),
+                    configuration.getFlushInterval(), TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Stops the background thread, writes the remaining clicks and closes the connections to the database, also if
+     * writing the clicks fails.
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(configuration.getFlushInterval() + 10000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+            if (store != null) {
+                store.close();
+            }
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    public boolean executeQuery(String queryString) {
+        boolean result = true;
+
+        try (Connection con = sql2o.open()) {
+            try(Query query = con.createQuery(queryString)) {
+                query.executeUpdate().commit();
+            } catch (Exception exception) {
+                LOGGER.error("Exception: {}", exception);
+                result = false;
+            }
+        } catch (Exception exception) {
+            LOGGER.error("Exception: {}", exception);
+            result = false;
+        }
+        return result;
+    }
+
+    /**
+     * Creates the statistics table, if it does not exist. It has one row per Fragment with the filename as primary key
+     * and an index on the clicks (including the name), so the top Fragments are read from the index only.
+     * @return True, if the table exists now.
+     */
+    public boolean createTable() {
+        String table = configuration.getTableName();
+        String createTable = String.format("CREATE TABLE IF NOT exists %s(name varchar(1000) primary key, clicks bigint not null default 0)", table);
+        String createIndex = String.format("CREATE INDEX IF NOT exists %s_clicks ON %s(clicks DESC, name)", table, table);
+        String createHourlyTable = String.format("CREATE TABLE IF NOT exists %s(name varchar(1000), hour bigint, clicks bigint not null, primary key(name, hour))", configuration.getHourlyTableName());
+        return executeQuery(createTable) && executeQuery(createIndex) && executeQuery(createHourlyTable);
+    }
+
+    /**
+     * Drops the statistics tables and the table of previous versions.
+     * @return True, if the tables were dropped.
+     */
+    public boolean dropTable() {
+        String dropTable = String.format("DROP TABLE IF exists %s CASCADE;", configuration.getTableName());
+        String dropHourlyTable = String.format("DROP TABLE IF exists %s CASCADE;", configuration.getHourlyTableName());
+        String dropOldTable = String.format("DROP TABLE IF exists %s CASCADE;", configuration.getDBName());
+        return executeQuery(dropTable) && executeQuery(dropHourlyTable) && executeQuery(dropOldTable);
+    }
+
+    /**
+     * Adds the clicks of the table of previous versions (one row per click) to the statistics table and drops it. The
+     * clicks are added and deleted in one transaction, so they are never counted twice.
+     * @return True, if there is no table of previous versions (anymore).
+     */
+    private boolean migrateClicks() {
+        String oldTable = configuration.getDBName();
+        String table = configuration.getTableName();
+        try (Connection con = sql2o.beginTransaction()) {
+            Long exists = con.createQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = :name")
+                    .addParameter("name", oldTable.toUpperCase(Locale.ROOT))
+                    .executeScalar(Long.class);
+            if (exists == 0) {
+                return true;
+            }
+            con.createQuery(String.format("MERGE INTO %1$s(name, clicks) KEY(name) SELECT o.name, "
+                    + "COALESCE(n.clicks, 0) + o.clicks FROM (SELECT name, SUM(clicks) clicks FROM %2$s "
+                    + "WHERE name IS NOT NULL GROUP BY name) o LEFT JOIN %1$s n ON n.name = o.name", table, oldTable))
+                    .executeUpdate();
+            con.createQuery(String.format("DELETE FROM %s", oldTable)).executeUpdate();
+            con.commit();
+        } catch (Exception exception) {
+            LOGGER.error("Exception migrating the clicks of {}: {}", oldTable, exception);
+            return false;
+        }
+        LOGGER.info("Migrated the clicks of {} to {}.", oldTable, table);
+        return executeQuery(String.format("DROP TABLE IF exists %s CASCADE;", oldTable));
+    }
+
+    /**
+     * Opens the store of the total clicks: the ClickJournal, if DBConfiguration.getJournal() is set, otherwise the
+     * statistics table. A new journal (without a totals file) is seeded with the clicks of the statistics table, so
+     * switching an existing database to the journal keeps the clicks.
+     * @return True, if the configured store was opened.
+     */
+    private boolean openStore() {
+        if (store != null) {
+            store.close();
+        }
+        store = new TableClickStore(sql2o, configuration.getTableName());
+        if (configuration.getJournal() != null) {
+            try {
+                ClickJournal journal = new ClickJournal(configuration.getJournal(),
+                        configuration.getJournalSegmentRecords(), configuration.getJournalSyncInterval());
+                if (!journal.hasTotals()) {
+                    try {
+                        journal.seed(store.load());
+                    } catch (RuntimeException exception) {
+                        journal.close();
+                        throw exception;
+                    }
+                    LOGGER.info("Seeded the click journal with the clicks of {}.", configuration.getTableName());
+                }
+                store = journal;
+            } catch (RuntimeException exception) {
+                LOGGER.error("Exception opening the click journal, using the database: {}", exception);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the number of clicks of all Fragments from the store. The top Fragments are seeded with them on first use.
+     * @return True, if the clicks were read.
+     */
+    private boolean loadClicks() {
+        clicks.clear();
+        fragmentsByFilename = null;
+        try {
+            for (Map.Entry<String, Long> entry : store.load().entrySet()) {
+                Clicks fragmentClicks = new Clicks();
+                fragmentClicks.flushed = entry.getValue();
+                fragmentClicks.total.add(fragmentClicks.flushed);
+                clicks.put(entry.getKey(), fragmentClicks);
+            }
+        } catch (Exception exception) {
+            LOGGER.error("Exception reading the number of clicks: {}", exception);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Deletes the clicks per hour older than 30 days and reads the remaining ones into the time buckets.
+     * @return True, if the clicks per hour were read.
+     */
+    private boolean loadStatistics() {
+        statistics = new ClickStatistics(System::currentTimeMillis);
+        long oldest = statistics.getCurrentHour() - 30 * 24;
+        String table = configuration.getHourlyTableName();
+        try (Connection con = sql2o.beginTransaction()) {
+            con.createQuery(String.format("DELETE FROM %s WHERE hour < :oldest", table))
+                    .addParameter("oldest", oldest)
+                    .executeUpdate();
+            con.commit();
+        } catch (Exception exception) {
+            LOGGER.error("Exception deleting the old clicks per hour: {}", exception);
+        }
+        try (Connection con = sql2o.open()) {
+            for (Row row : con.createQuery(String.format("SELECT name, hour, clicks FROM %s", table))
+                    .executeAndFetchTable().rows()) {
+                statistics.addHour(row.getString(0), row.getLong(1), row.getLong(2));
+            }
+        } catch (Exception exception) {
+            LOGGER.error("Exception reading the clicks per hour: {}", exception);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Counts a click of a Fragment. Only the counter in memory is changed, the click is written to the database later.
+     * @param fragment The Fragment.
+     * @return The number of clicks of the Fragment including this click.
+     */
+    public long addClick(Fragment fragment) {
+        String name = fragment.getFilename();
+        Clicks fragmentClicks = clicks.get(name);
+        if (fragmentClicks == null) {
+            fragmentClicks = clicks.computeIfAbsent(name, key -> new Clicks());
+        }
+        final ClickStore localStore = store;
+        if (localStore != null) {
+            try {
+                localStore.addClick(name);
+            } catch (RuntimeException exception) {
+                LOGGER.error("Exception storing the click: {}", exception);
+            }
+        }
+        fragmentClicks.total.increment();
+        statistics.addClick(name);
+        unflushed.increment();
+        if (!flushRequested.get() && unflushed.sum() >= configuration.getFlushThreshold()
+                && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Closed, the click is written by close()
+            }
+        }
+        long total = fragmentClicks.total.sum();
+        FragmentsByFilename visible = getVisible();
+        if (visible.fragments.containsKey(name)) {
+            visible.top.update(name, total);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of clicks of a Fragment from memory.
+     * @param fragment The Fragment.
+     * @return The number of clicks of the Fragment.
+     */
+    public long getNumberOfClicks(Fragment fragment) {
+        Clicks fragmentClicks = clicks.get(fragment.getFilename());
+        return fragmentClicks == null ? 0 : fragmentClicks.total.sum();
+    }
+
+    /**
+     * Writes the clicks counted since the last write to the database: the total clicks and the clicks per hour of the
+     * Fragments with new clicks. If writing fails, the clicks are written with the next flush.
+     * @return True, if the clicks were written.
+     */
+    public synchronized boolean flush() {
+        boolean result = writeClicks();
+        return writeStatistics() && result;
+    }
+
+    /**
+     * Adds the clicks counted since the last write to the statistics table, in one batch and one transaction. Without a
+     * store (the tables could not be created), the clicks are only counted in memory.
+     * @return True, if the clicks were written.
+     */
+    private boolean writeClicks() {
+        // May lose concurrent increments of the counter (not clicks), which only delays the next write
+        unflushed.reset();
+        flushRequested.set(false);
+        if (store == null) {
+            return false;
+        }
+        Map<String, Long> deltas = new HashMap<>();
+        Map<String, Long> totals = new HashMap<>();
+        for (Map.Entry<String, Clicks> entry : clicks.entrySet()) {
+            long total = entry.getValue().total.sum();
+            if (total > entry.getValue().flushed) {
+                deltas.put(entry.getKey(), total - entry.getValue().flushed);
+                totals.put(entry.getKey(), total);
+            }
+        }
+        try {
+            store.write(deltas);
+        } catch (Exception exception) {
+            LOGGER.error("Exception writing the clicks: {}", exception);
+            return false;
+        }
+        for (Map.Entry<String, Long> entry : totals.entrySet()) {
+            clicks.get(entry.getKey()).flushed = entry.getValue();
+        }
+        return true;
+    }
+
+    /**
+     * Writes the clicks of the current and of the previous hour of the Fragments with new clicks to the table of the
+     * clicks per hour, in one batch and one transaction. The values are the ones of the time buckets, so writing them
+     * again does not change them.
+     * @return True, if the clicks were written.
+     */
+    private boolean writeStatistics() {
+        List<String> changed = statistics.getChanged();
+        if (changed.isEmpty()) {
+            return true;
+        }
+        long hour = statistics.getCurrentHour();
+        String sqlMerge = String.format("MERGE INTO %s(name, hour, clicks) KEY(name, hour) VALUES (:name, :hour, :clicks)",
+                configuration.getHourlyTableName());
+        try (Connection con = sql2o.beginTransaction()) {
+            Query query = con.createQuery(sqlMerge);
+            for (String name : changed) {
+                for (long localHour = hour - 1; localHour <= hour; localHour++) {
+                    long hourClicks = statistics.getHour(name, localHour);
+                    if (hourClicks > 0) {
+                        query.addParameter("name", name).addParameter("hour", localHour)
+                                .addParameter("clicks", hourClicks).addToBatch();
+                    }
+                }
+            }
+            query.executeBatch();
+            con.commit();
+        } catch (Exception exception) {
+            LOGGER.error("Exception writing the clicks per hour: {}", exception);
+            for (String name : changed) {
+                statistics.setChanged(name);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the clicks in time buckets, e.g. for the Fragments with the most clicks of the last 7 days.
+     * @return The clicks in time buckets.
+     */
+    public ClickStatistics getClickStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns the visible Fragments with the most clicks in the last 24 hours, at most
+     * DBConfiguration.getTopFragments().
+     * @return The Fragments, most clicks first.
+     */
+    public List<Fragment> getTrendingFragments() {
+        return getTrendingFragments(ClickStatistics.DAY, configuration.getTopFragments());
+    }
+
+    /**
+     * Returns the visible Fragments with the most clicks in a window, see ClickStatistics.getTop().
+     * @param window The length of the window in milliseconds, e.g. ClickStatistics.WEEK.
+     * @param numberOfFragments The maximum number of Fragments.
+     * @return The Fragments, most clicks first.
+     */
+    public List<Fragment> getTrendingFragments(long window, int numberOfFragments) {
+        // All names, the invisible ones are skipped before truncating
+        return toFragments(statistics.getTop(window, Integer.MAX_VALUE), numberOfFragments);
+    }
+
+    /**
+     * Returns the visible Fragments with the most clicks, at most DBConfiguration.getTopFragments().
+     * @return The Fragments, most clicks first.
+     */
+    public List<Fragment> getTopFragments() {
+        return getTopFragments(configuration.getTopFragments());
+    }
+
+    /**
+     * Returns the visible Fragments with the most clicks. They are taken from the top kept in memory, so at most
+     * DBConfiguration.getTopFragments() Fragments are returned.
+     * @param numberOfTopFragments The maximum number of Fragments.
+     * @return The Fragments, most clicks first.
+     */
+    public List<Fragment> getTopFragments(int numberOfTopFragments) {
+        return toFragments(getVisible().top.get(), numberOfTopFragments);
+    }
+
+    /**
+     * Returns the visible Fragments with the given filenames.
+     * @param names The filenames.
+     * @param numberOfTopFragments The maximum number of Fragments.
+     * @return The visible Fragments in the order of the filenames.
+     */
+    private List<Fragment> toFragments(List<String> names, int numberOfTopFragments) {
+        Map<String, Fragment> visible = getVisible().fragments;
+        List<Fragment> result = new ArrayList<>(Math.min(numberOfTopFragments, names.size()));
+        for (String name : names) {
+            if (result.size() >= numberOfTopFragments) {
+                break;
+            }
+            Fragment fragment = visible.get(name);
+            if (fragment != null) {
+                result.add(fragment);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the visible Fragments of the current snapshot by filename and their top. Both are created once per
+     * snapshot, the top is seeded with the clicks counted so far. Clicks counted while seeding may be missing in the
+     * top, the next click of the Fragment corrects it.
+     * @return The visible Fragments with the filename as key and their top.
+     */
+    private FragmentsByFilename getVisible() {
+        FragmentsSnapshot current = fragments.getSnapshot();
+        FragmentsByFilename result = fragmentsByFilename;
+        if (result == null || result.snapshot != current) {
+            Map<String, Fragment> byFilename = new HashMap<>();
+            for (Fragment fragment : current.getFragments(false)) {
+                byFilename.put(fragment.getFilename(), fragment);
+            }
+            TopClicks top = new TopClicks(configuration.getTopFragments());
+            for (Map.Entry<String, Clicks> entry : clicks.entrySet()) {
+                if (byFilename.containsKey(entry.getKey())) {
+                    top.update(entry.getKey(), entry.getValue().total.sum());
+                }
+            }
+            result = new FragmentsByFilename(current, byFilename, top);
+            fragmentsByFilename = result;
+        }
+        return result;
+    }
+
+    /*private static void insertWithPreparedStatement() throws SQLException {
+        Connection connection = getDBConnection();
+        PreparedStatement createPreparedStatement = null;
+        PreparedStatement insertPreparedStatement = null;
+        PreparedStatement selectPreparedStatement = null;
+
+        String CreateQuery = "CREATE TABLE PERSON(id int primary key, name varchar(255))";
+        String InsertQuery = "INSERT INTO PERSON" + "(id, name) values" + "(?,?)";
+        String SelectQuery = "select * from PERSON";
+        try {
+            connection.setAutoCommit(false);
+
+            createPreparedStatement = connection.prepareStatement(CreateQuery);
+            createPreparedStatement.executeUpdate();
+            createPreparedStatement.close();
+
+            insertPreparedStatement = connection.prepareStatement(InsertQuery);
+            insertPreparedStatement.setInt(1, 1);
+            insertPreparedStatement.setString(2, "Jose");
+            insertPreparedStatement.executeUpdate();
+            insertPreparedStatement.close();
+
+            selectPreparedStatement = connection.prepareStatement(SelectQuery);
+            ResultSet rs = selectPreparedStatement.executeQuery();
+            System.out.println("H2 Database inserted through PreparedStatement");
+            while (rs.next()) {
+                System.out.println("Id "+rs.getInt("id")+" Name "+rs.getString("name"));
+            }
+            selectPreparedStatement.close();
+
+            connection.commit();
+        } catch (SQLException e) {
+            System.out.println("Exception Message " + e.getLocalizedMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connection.close();
+        }
+    }*/
+
+    /*private static void insertWithStatement() throws SQLException {
+        Connection connection = getDBConnection();
+        Statement stmt = null;
+        try {
+            connection.setAutoCommit(false);
+            stmt = connection.createStatement();
+            stmt.execute("CREATE TABLE PERSON(id int primary key, name varchar(255))");
+            stmt.execute("INSERT INTO PERSON(id, name) VALUES(1, 'Anju')");
+            stmt.execute("INSERT INTO PERSON(id, name) VALUES(2, 'Sonia')");
+            stmt.execute("INSERT INTO PERSON(id, name) VALUES(3, 'Asha')");
+
+            ResultSet rs = stmt.executeQuery("select * from PERSON");
+            System.out.println("H2 Database inserted through Statement");
+            while (rs.next()) {
+                System.out.println("Id "+rs.getInt("id")+" Name "+rs.getString("name"));
+            }
+            stmt.close();
+            connection.commit();
+        } catch (SQLException e) {
+            System.out.println("Exception Message " + e.getLocalizedMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            connection.close();
+        }
+    }*/
+
+
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import org.sql2o.data.Row;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the clicks in the statistics table of the database, see DBConfiguration.getTableName(). The new clicks are
+ * added in one batch of "MERGE INTO ... KEY(name)" statements per write.
+ * @author Alexander Brandt
+ */
+class TableClickStore implements ClickStore {
+    private final Sql2o sql2o;
+    private final String table;
+
+    /**
+     * Creates the store, the table must exist.
+     * @param sql2o The database.
+     * @param table The name of the statistics table.
+     */
+    TableClickStore(Sql2o sql2o, String table) {
+        this.sql2o = sql2o;
+        this.table = table;
+    }
+
+    @Override
+    public Map<String, Long> load() {
+        Map<String, Long> result = new HashMap<>();
+        try (Connection con = sql2o.open()) {
+            for (Row row : con.createQuery(String.format("SELECT name, clicks FROM %s", table))
+                    .executeAndFetchTable().rows()) {
+                result.put(row.getString(0), row.getLong(1));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addClick(String name) {
+        // The clicks are written in batches
+    }
+
+    @Override
+    public void write(Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        String sqlMerge = String.format("MERGE INTO %1$s(name, clicks) KEY(name) VALUES (:name, "
+                + "COALESCE((SELECT clicks FROM %1$s WHERE name = :name), 0) + :clicks)", table);
+        try (Connection con = sql2o.beginTransaction()) {
+            Query query = con.createQuery(sqlMerge);
+            for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                query.addParameter("name", entry.getKey()).addParameter("clicks", entry.getValue()).addToBatch();
+            }
+            query.executeBatch();
+            con.commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        // The connections are closed by DBSupport
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.andromeda.fragments.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The names with the most clicks, updated with every click. As the number of clicks only grows by one per click, a name
+ * enters the top as soon as it has more clicks than the last one, so the top is exact, if it was seeded with all
+ * names. Clicks of names, which are neither in the top nor above its threshold, are rejected without locking. Clicks of
+ * names in the top, which do not change their position, only update their count without locking, so clicks of a
+ * popular Fragment don't contend. Reading the top returns the current immutable list.
+ * @author Alexander Brandt
+ */
+final class TopClicks {
+    /** A name in the top. */
+    private static final class Entry {
+        private final String name;
+        /** The clicks of the name, only grows. Concurrent updates may lose a click, the next update corrects it. */
+        private volatile long count;
+
+        private Entry(String name) {
+            this.name = name;
+        }
+    }
+
+    private final int capacity;
+    /** The entries sorted by clicks (most first), replaced when the order changes. */
+    private volatile Entry[] entries = new Entry[0];
+    /** The clicks of the last name, if the top is full, otherwise -1. */
+    private volatile long threshold = -1;
+    /** The current top, replaced when the order changes. */
+    private volatile List<String> top = Collections.emptyList();
+
+    /**
+     * Creates the empty top.
+     * @param capacity The maximum number of names.
+     */
+    TopClicks(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Updates the number of clicks of a name.
+     * @param name The name.
+     * @param count The new number of clicks of the name.
+     */
+    void update(String name, long count) {
+        if (capacity == 0) {
+            return;
+        }
+        Entry[] current = entries;
+        for (int index = 0; index < current.length; index++) {
+            Entry entry = current[index];
+            if (entry.name.equals(name)) {
+                // Clicks of concurrent requests may be reported out of order
+                if (count <= entry.count) {
+                    return;
+                }
+                entry.count = count;
+                if (index > 0 && count > current[index - 1].count) {
+                    break;
+                }
+                if (index == current.length - 1 && current.length == capacity) {
+                    threshold = count;
+                }
+                return;
+            }
+        }
+        if (count <= threshold && !top.contains(name)) {
+            return;
+        }
+        reorder(name, count);
+    }
+
+    /** Moves a name up, adds it or replaces the last name with it, and publishes the new top. */
+    private synchronized void reorder(String name, long count) {
+        Entry[] current = entries;
+        int index = 0;
+        while (index < current.length && !current[index].name.equals(name)) {
+            index++;
+        }
+        Entry[] result;
+        if (index < current.length) {
+            result = current.clone();
+        } else if (current.length < capacity) {
+            result = Arrays.copyOf(current, current.length + 1);
+            result[index] = new Entry(name);
+        } else if (count > current[current.length - 1].count) {
+            result = current.clone();
+            index = current.length - 1;
+            result[index] = new Entry(name);
+        } else {
+            return;
+        }
+        Entry entry = result[index];
+        entry.count = Math.max(entry.count, count);
+        while (index > 0 && entry.count > result[index - 1].count) {
+            result[index] = result[index - 1];
+            result[index - 1] = entry;
+            index--;
+        }
+        List<String> names = new ArrayList<>(result.length);
+        for (Entry localEntry : result) {
+            names.add(localEntry.name);
+        }
+        entries = result;
+        threshold = result.length < capacity ? -1 : result[result.length - 1].count;
+        top = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the names with the most clicks.
+     * @return The unmodifiable list of the names, most clicks first.
+     */
+    List<String> get() {
+        return top;
+    }
+
+    /**
+     * Returns the maximum number of names.
+     * @return The maximum number of names.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,40 @@
+package io.andromeda.fragments;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class ConditionalGetTest {
+
+    @Test
+    public void testConditionalGetETag() throws Exception {
+        assertThat(ConditionalGet.createETag("0123456789abcdef0123", "en", 255), equalTo("\"0123456789abcdef-en-ff\""));
+        assertThat(ConditionalGet.createETag(null, null, 1), equalTo("\"0-none-1\""));
+    }
+
+    @Test
+    public void testConditionalGetIfNoneMatch() throws Exception {
+        String etag = ConditionalGet.createETag("abc", "en", 1);
+        assertThat(ConditionalGet.isNotModified(etag, -1, etag, 1000), equalTo(true));
+        assertThat(ConditionalGet.isNotModified("\"x\", W/" + etag, -1, etag, 1000), equalTo(true));
+        assertThat(ConditionalGet.isNotModified("*", -1, etag, 1000), equalTo(true));
+        assertThat(ConditionalGet.isNotModified("\"x\"", -1, etag, 1000), equalTo(false));
+        // If-Modified-Since is ignored, when If-None-Match is present
+        assertThat(ConditionalGet.isNotModified("\"x\"", 5000, etag, 1000), equalTo(false));
+        // The ETag of the compressed form
+        assertThat(ConditionalGet.toGzipETag(etag), equalTo("\"abc-en-1-gzip\""));
+        assertThat(ConditionalGet.isNotModified(ConditionalGet.toGzipETag(etag), -1, etag, 1000), equalTo(true));
+    }
+
+    @Test
+    public void testConditionalGetIfModifiedSince() throws Exception {
+        assertThat(ConditionalGet.isNotModified(null, -1, "\"a\"", 1000), equalTo(false));
+        assertThat(ConditionalGet.isNotModified(null, 1000, "\"a\"", 1999), equalTo(true));
+        assertThat(ConditionalGet.isNotModified(null, 1000, "\"a\"", 2000), equalTo(false));
+    }
+}
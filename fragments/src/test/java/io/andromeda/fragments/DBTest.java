@@ -1,50 +1,219 @@
-package io.andromeda.fragments;
-
-import io.andromeda.fragments.db.DBConfiguration;
-import io.andromeda.fragments.db.DBSupport;
-import org.junit.Test;
-import ro.pippo.core.Application;
-
-import java.nio.file.Paths;
-import java.time.Instant;
-import java.util.Date;
-import java.util.List;
-
-import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.equalTo;
-
-/**
- * Created by Alexander on 12.02.2017.
- */
-public class DBTest {
-
-    /** Test all properties of a Fragment. */
-    @Test
-    public void testFragmentsDBSupport() {
-        Date expectedDate = Date.from(Instant.parse("2017-01-02T00:00:00.000Z"));
-        String currentPath = System.getProperty("user.dir");
-        Configuration configuration = new Configuration("order", "/",
-                Paths.get(currentPath + "/src/test/resources/fragments/tests/general/"), "",
-                "", 0);
-
-        Fragments fragments = new Fragments(new Application(), configuration);
-        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
-        //fragments.d
-        dbConfig.setResetDB(true);
-        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
-
-        List<Fragment> items = fragments.getFragments(true);
-        Fragment fragment = items.get(0);
-        assertThat(fragment.getTitle(), equalTo("This is a Test"));
-        assertThat(fragment.getSlug(), equalTo("this_is_test"));
-        assertThat(fragment.getDate(), equalTo(expectedDate));
-        assertThat(fragment.getOrder(), equalTo(-100));
-        assertThat(fragment.getVisible(), equalTo(false));
-        assertThat(fragment.getPreview().trim(), equalTo("<p>Manual preview</p>"));
-
-        assertThat(dbSupport.getNumberOfClicks(fragment), equalTo(0L));
-        assertThat(dbSupport.addClick(fragment), equalTo(1L));
-    }
-
-
-}
+package io.andromeda.fragments;
+
+import io.andromeda.fragments.db.ClickStatistics;
+import io.andromeda.fragments.db.DBConfiguration;
+import io.andromeda.fragments.db.DBSupport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.pippo.core.Application;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Created by Alexander on 12.02.2017.
+ */
+public class DBTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Test all properties of a Fragment. */
+    @Test
+    public void testFragmentsDBSupport() {
+        Date expectedDate = Date.from(Instant.parse("2017-01-02T00:00:00.000Z"));
+        String currentPath = System.getProperty("user.dir");
+        Configuration configuration = new Configuration("order", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/general/"), "",
+                "", 0);
+
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        //fragments.d
+        dbConfig.setResetDB(true);
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+
+        List<Fragment> items = fragments.getFragments(true);
+        Fragment fragment = items.get(0);
+        assertThat(fragment.getTitle(), equalTo("This is a Test"));
+        assertThat(fragment.getSlug(), equalTo("this_is_test"));
+        assertThat(fragment.getDate(), equalTo(expectedDate));
+        assertThat(fragment.getOrder(), equalTo(-100));
+        assertThat(fragment.getVisible(), equalTo(false));
+        assertThat(fragment.getPreview().trim(), equalTo("<p>Manual preview</p>"));
+
+        assertThat(dbSupport.getNumberOfClicks(fragment), equalTo(0L));
+        assertThat(dbSupport.addClick(fragment), equalTo(1L));
+        fragments.close();
+    }
+
+    /** Test that the clicks counted in memory are written to the database. */
+    @Test
+    public void testFragmentsDBSupportFlush() throws Exception {
+        Path directory = temporaryFolder.newFolder("flush").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\n---\nSecond!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("flush", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        dbConfig.setResetDB(true);
+        dbConfig.setFlushThreshold(2);
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+        Fragment first = fragments.getFragments(true).get(0);
+        Fragment second = fragments.getFragments(true).get(1);
+        for (int i = 0; i < 5; i++) {
+            dbSupport.addClick(first);
+        }
+        dbSupport.addClick(second);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(5L));
+        assertThat(dbSupport.getTopFragments(), contains(first, second));
+        assertThat(dbSupport.flush(), equalTo(true));
+        dbSupport.addClick(second);
+        fragments.close();
+
+        // The clicks are read from the database again
+        dbConfig.setResetDB(false);
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(5L));
+        assertThat(dbSupport.getNumberOfClicks(second), equalTo(2L));
+        // The top is seeded from the database
+        assertThat(dbSupport.getTopFragments(1), contains(first));
+        // The clicks per hour are read from the database
+        assertThat(dbSupport.getClickStatistics().getClicks(second.getFilename(), ClickStatistics.DAY), equalTo(2L));
+        assertThat(dbSupport.getTrendingFragments(), contains(first, second));
+        assertThat(dbSupport.addClick(first), equalTo(6L));
+        fragments.close();
+    }
+
+    /** Test that the clicks are stored in the click journal, if it is configured. */
+    @Test
+    public void testFragmentsDBSupportJournal() throws Exception {
+        Path directory = temporaryFolder.newFolder("journal").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("journal", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        dbConfig.setJournal(temporaryFolder.getRoot().toPath().resolve("clicks"));
+        dbConfig.setJournalSegmentRecords(2);
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+        Fragment first = fragments.getFragments(true).get(0);
+        for (int i = 0; i < 5; i++) {
+            dbSupport.addClick(first);
+        }
+        fragments.close();
+
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(5L));
+        fragments.close();
+    }
+
+    /** Test that a new click journal is seeded with the clicks of the statistics table. */
+    @Test
+    public void testFragmentsDBSupportJournalSeed() throws Exception {
+        Path directory = temporaryFolder.newFolder("seed").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("seed", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        dbConfig.setResetDB(true);
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+        Fragment first = fragments.getFragments(true).get(0);
+        for (int i = 0; i < 3; i++) {
+            dbSupport.addClick(first);
+        }
+        fragments.close();
+
+        dbConfig.setResetDB(false);
+        dbConfig.setJournal(temporaryFolder.getRoot().toPath().resolve("seed-clicks"));
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(3L));
+        assertThat(dbSupport.addClick(first), equalTo(4L));
+        fragments.close();
+
+        // Seeded only once
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(4L));
+        fragments.close();
+    }
+
+    /** Test that a Fragment, which is not visible anymore, does not take a place in the top and the trending ones. */
+    @Test
+    public void testFragmentsDBSupportTopInvisible() throws Exception {
+        Path directory = temporaryFolder.newFolder("invisible").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\n---\nSecond!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("invisible", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        dbConfig.setResetDB(true);
+        dbConfig.setTopFragments(1);
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+        Fragment first = fragments.getFragments(true).get(0);
+        Fragment second = fragments.getFragments(true).get(1);
+        for (int i = 0; i < 3; i++) {
+            dbSupport.addClick(first);
+        }
+        dbSupport.addClick(second);
+        assertThat(dbSupport.getTopFragments(), contains(first));
+
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\nvisible: false\n---\nFirst!\n"
+                .getBytes("UTF-8"));
+        fragments.applyChanges(Collections.singleton(directory.resolve("first.md")));
+        assertThat(dbSupport.getTopFragments(), contains(second));
+        assertThat(dbSupport.getTrendingFragments(ClickStatistics.DAY, 1), contains(second));
+        fragments.close();
+    }
+
+    /** Test that the clicks are counted in memory, if the tables cannot be created. */
+    @Test
+    public void testFragmentsDBSupportNoTable() throws Exception {
+        Path directory = temporaryFolder.newFolder("notable").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        // Not a valid table name
+        Configuration configuration = new Configuration("no-table", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBSupport dbSupport = fragments.enableDatabase(new DBConfiguration(fragments, "1234"));
+        Fragment first = fragments.getFragments(true).get(0);
+        assertThat(dbSupport.addClick(first), equalTo(1L));
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(1L));
+        assertThat(dbSupport.flush(), equalTo(false));
+        fragments.close();
+    }
+
+    /** Test that the clicks of the table of previous versions are added to the statistics table. */
+    @Test
+    public void testFragmentsDBSupportMigration() throws Exception {
+        Path directory = temporaryFolder.newFolder("migration").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("migration", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        DBSupport dbSupport = fragments.enableDatabase(dbConfig);
+        Fragment first = fragments.getFragments(true).get(0);
+        dbSupport.addClick(first);
+        assertThat(dbSupport.executeQuery("CREATE TABLE " + dbConfig.getDBName()
+                + "(id bigint auto_increment primary key, name varchar(1000), clicks bigint)"), equalTo(true));
+        assertThat(dbSupport.executeQuery("INSERT INTO " + dbConfig.getDBName() + "(name, clicks) VALUES ('"
+                + first.getFilename() + "', 1), ('" + first.getFilename() + "', 2)"), equalTo(true));
+        fragments.close();
+
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(4L));
+        fragments.close();
+        // The old table is migrated only once
+        dbSupport = fragments.enableDatabase(dbConfig);
+        assertThat(dbSupport.getNumberOfClicks(first), equalTo(4L));
+        fragments.close();
+    }
+
+
+}
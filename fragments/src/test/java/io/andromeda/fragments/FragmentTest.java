@@ -1,6 +1,7 @@
 package io.andromeda.fragments;
 
 import ch.qos.logback.classic.spi.LoggingEvent;
+import com.vladsch.flexmark.Extension;
 import ch.qos.logback.core.Appender;
 import io.andromeda.fragments.types.FrontMatterType;
 import io.andromeda.fragments.types.RouteType;
@@ -12,16 +13,20 @@ import org.mockito.ArgumentMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -57,7 +62,7 @@ public class FragmentTest extends Assert {
     }
 
     @Test
-    public void testFragmentGeneral() {
+    public void testFragmentGeneral() throws Exception {
         Path directory = Paths.get(System.getProperty("user.dir"), "/src/test/resources/fragments/tests/blog/");
         String expectedFilename = Paths.get(directory.toString(), "/blog_post_date_time.md").toString();
         Configuration configuration = new Configuration("Test", "/blog", Paths.get(""),
@@ -85,6 +90,10 @@ public class FragmentTest extends Assert {
         String expectedTemplate = "static";
         String template = staticPage.getTemplate();
         assertThat(template, equalTo(expectedTemplate));
+        String expectedContentHash = FragmentCache.hash(Files.readAllBytes(Paths.get(expectedFilename)));
+        assertThat(staticPage.getContentHash(), equalTo(expectedContentHash));
+        long expectedLastModified = Files.getLastModifiedTime(Paths.get(expectedFilename)).toMillis();
+        assertThat(staticPage.getLastModified(), equalTo(expectedLastModified));
     }
 
     @Test
@@ -153,6 +162,54 @@ public class FragmentTest extends Assert {
         assertThat(result, equalTo(expected));
     }
 
+    @Test
+    public void testPreviewMoreMarkerInCodeBlock() {
+        MarkdownEngine engine = new MarkdownEngine();
+        String markdown = "Intro\n\n```\n<!--more-->\n```\n\nText\n\n<!--more-->\n\nThe rest.\n";
+        LanguageContent content = new LanguageContent(markdown, null, engine, false);
+        assertThat(content.getPreview(), equalTo("<p>Intro</p>\n<pre><code>&lt;!--more--&gt;\n</code></pre>\n"
+                + "<p>Text</p>\n"));
+        // Only a marker in a code block is not a more marker
+        content = new LanguageContent("Intro\n\n    <!--more-->\n\nThe rest.\n", null, engine, false);
+        assertThat(content.getPreview(), equalTo(""));
+    }
+
+    @Test
+    public void testPreviewMoreMarkerWithWhitespace() {
+        MarkdownEngine engine = new MarkdownEngine();
+        LanguageContent content = new LanguageContent("Text <!--more --> The rest.\n", null, engine, false);
+        assertThat(content.getPreview(), equalTo("<p>Text </p>\n"));
+        content = new LanguageContent("Text\n\n<!-- more -->\nThe rest.\n", null, engine, false);
+        assertThat(content.getPreview(), equalTo("<p>Text</p>\n"));
+        assertThat(content.getHtml().contains("The rest."), equalTo(true));
+    }
+
+    @Test
+    public void testPreviewFrontMatter() {
+        MarkdownEngine engine = new MarkdownEngine();
+        LanguageContent content = new LanguageContent("Text\n\n<!--more-->\n\nThe rest.\n", "The *preview*",
+                engine, false);
+        assertThat(content.getPreview(), equalTo("<p>The <em>preview</em></p>\n"));
+        assertThat(content.getPreviewTextOnly(), equalTo("The preview"));
+    }
+
+    @Test
+    public void testPreviewTextOnlyIsNotEscaped() {
+        MarkdownEngine engine = new MarkdownEngine();
+        LanguageContent content = new LanguageContent("# Title\n\nA *b* < c & \"d\"\n\n<!--more-->\n\nThe rest.\n",
+                null, engine, false);
+        assertThat(content.getPreviewTextOnly(), equalTo("Title\nA b < c & \"d\""));
+        assertThat(content.getPreview(), equalTo("<h1>Title</h1>\n<p>A <em>b</em> &lt; c &amp; &quot;d&quot;</p>\n"));
+    }
+
+    @Test
+    public void testPreviewTextOnlyIsUnescaped() {
+        MarkdownEngine engine = new MarkdownEngine();
+        LanguageContent content = new LanguageContent("5\\$ and 1\\_000 \\# &copy; `a\\_b`\n\n    c\\_d\n\n"
+                + "```\ne\\_f\n```\n\n<!--more-->\n\nThe rest.\n", null, engine, false);
+        assertThat(content.getPreviewTextOnly(), equalTo("5$ and 1_000 # \u00a9 a\\_b\nc\\_d\ne\\_f"));
+    }
+
     @Test
     public void testDateOnly() {
         String expected = "/blog/2017/01/12/blog_post_date_only";
@@ -181,6 +238,32 @@ public class FragmentTest extends Assert {
         assertThat(result, equalTo(expected));
     }
 
+    @Test
+    public void testLanguageSections() {
+        Fragment fragment = new Fragment(System.getProperty("user.dir") + "/src/test/resources/languages/item.md", "de",
+                new Configuration("Test", "/", Paths.get(""), "", "", 0));
+        assertThat(fragment.getLanguages().keySet(), contains("de", "en-US"));
+        assertThat(fragment.getContent(), equalTo("<p>Das ist der deutsche Text!</p>\n"));
+        fragment.update("en-US");
+        assertThat(fragment.getContent(), equalTo("<p>This is the English text!</p>\n"));
+    }
+
+    @Test
+    public void testViews() {
+        Fragment fragment = new Fragment(System.getProperty("user.dir") + "/src/test/resources/languages/item.md", "de",
+                new Configuration("Test", "/", Paths.get(""), "", "", 0));
+        FragmentView english = fragment.getView("en-US");
+        FragmentView german = fragment.getView("de");
+        assertThat(english.getContent(), equalTo("<p>This is the English text!</p>\n"));
+        assertThat(german.getContent(), equalTo("<p>Das ist der deutsche Text!</p>\n"));
+        assertThat(english.getTitle(), equalTo(german.getTitle()));
+        // Unknown languages fall back to the default language, the views are shared
+        assertThat(fragment.getView("fr"), sameInstance(german));
+        assertThat(fragment.getView("en-US"), sameInstance(english));
+        // The Fragment itself is not changed
+        assertThat(fragment.getContent(), equalTo("<p>Das ist der deutsche Text!</p>\n"));
+    }
+
     @Test
     public void testMarkdownTables() {
         String expected = "<table>\n" +
@@ -197,6 +280,27 @@ public class FragmentTest extends Assert {
         assertThat(result, equalTo(expected));
     }
 
+    @Test
+    public void testMarkdownEngineExtensions() {
+        Configuration configuration = new Configuration("Test", "/test", Paths.get(""), "", "", 0);
+        configuration.setMarkdownEngine(new MarkdownEngine(Collections.<Extension>emptyList()));
+        Fragment staticPage = new Fragment(System.getProperty("user.dir") + "/src/test/resources/fragments/tests/tables/tables.md", "en", configuration);
+        assertThat(staticPage.getContent().startsWith("<p>| Header 1 | Header 2 |"), equalTo(true));
+    }
+
+    @Test
+    public void testLazyRendering() {
+        String filename = System.getProperty("user.dir") + "/src/test/resources/fragments/tests/blog/blog_post_2.md";
+        Fragment expected = new Fragment(filename, "en", new Configuration("Test", "/", Paths.get(""), "", "", 0));
+        Configuration configuration = new Configuration("Test", "/", Paths.get(""), "", "", 0);
+        configuration.setLazyRendering(true);
+        Fragment fragment = new Fragment(filename, "en", configuration);
+        assertThat(fragment.getPreviewTextOnly(), equalTo(expected.getPreviewTextOnly()));
+        assertThat(fragment.getPreview(), equalTo(expected.getPreview()));
+        assertThat(fragment.getContent(), equalTo(expected.getContent()));
+        assertThat(fragment.getLanguages(), equalTo(expected.getLanguages()));
+    }
+
     @Test
     public void testCompareFragmentsEqual() {
         Fragment expected = new Fragment(System.getProperty("user.dir") + "/src/test/resources/fragments/tests/blog/blog_post_2.md", "en",
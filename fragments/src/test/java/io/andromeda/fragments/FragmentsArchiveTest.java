@@ -0,0 +1,72 @@
+package io.andromeda.fragments;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.pippo.core.Application;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class FragmentsArchiveTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> titles(List<Fragment> fragments) {
+        return fragments.stream().map(Fragment::getTitle).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testFragmentsArchive() throws Exception {
+        Path directory = temporaryFolder.newFolder("archive").toPath();
+        String[][] posts = {{"a", "2016-12-31"}, {"b", "2017-01-12T10:15"}, {"c", "2017-01-12T08:00"},
+                {"d", "2017-02-01"}, {"e", null}};
+        for (String[] post : posts) {
+            Files.write(directory.resolve(post[0] + ".md"), ("---\ntitle: " + post[0]
+                    + (post[1] != null ? "\ndate: " + post[1] : "") + "\n---\n" + post[0] + "\n").getBytes("UTF-8"));
+        }
+        Configuration configuration = new Configuration("Archive", "/", directory, "", "", 0);
+        configuration.setArchiveRoutes(true);
+        Application application = new Application();
+        Fragments fragments = new Fragments(application, configuration);
+        FragmentsArchive archive = fragments.getSnapshot().getArchive();
+
+        // Fragments without date are not in the archive
+        assertThat(titles(archive.getFragments()), contains("a", "c", "b", "d"));
+        assertThat(titles(archive.getYear(2017)), contains("c", "b", "d"));
+        assertThat(titles(archive.getMonth(2017, 1)), contains("c", "b"));
+        assertThat(titles(archive.getDay(2017, 1, 12)), contains("c", "b"));
+        assertThat(archive.getDay(2017, 1, 13), empty());
+        assertThat(archive.getYear(2015), empty());
+        assertThat(titles(archive.getFragments(LocalDate.of(2016, 12, 1), LocalDate.of(2017, 1, 31))),
+                contains("a", "c", "b"));
+        assertThat(archive.getFragments(LocalDate.of(2017, 1, 13), LocalDate.of(2017, 1, 31)), empty());
+        assertThat(archive.getMonths().get(YearMonth.of(2017, 1)), equalTo(2));
+        assertThat(archive.getMonths().size(), equalTo(3));
+
+        assertThat(application.getRouter().findRoutes("GET", "/2017").size(), equalTo(1));
+        assertThat(application.getRouter().findRoutes("GET", "/2017/01").size(), equalTo(1));
+        assertThat(application.getRouter().findRoutes("GET", "/2017/01/12").size(), equalTo(1));
+        // Month and day "00" would be the pages of the complete year or month
+        assertThat(application.getRouter().findRoutes("GET", "/2017/00"), empty());
+        assertThat(application.getRouter().findRoutes("GET", "/2017/01/00"), empty());
+        assertThat(application.getRouter().findRoutes("GET", "/2017/13"), empty());
+        assertThat(application.getRouter().findRoutes("GET", "/2017/01/32"), empty());
+        assertThat(application.getRouter().findRoutes("GET", "/2017/12/31").size(), equalTo(1));
+        assertThat(archive.getDays(), contains(LocalDate.of(2016, 12, 31), LocalDate.of(2017, 1, 12),
+                LocalDate.of(2017, 2, 1)));
+    }
+}
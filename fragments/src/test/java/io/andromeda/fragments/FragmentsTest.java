@@ -2,24 +2,64 @@ package io.andromeda.fragments;
 
 import ch.qos.logback.classic.spi.LoggingEvent;
 import ch.qos.logback.core.Appender;
+import io.andromeda.fragments.db.DBConfiguration;
 import io.andromeda.fragments.types.RouteType;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatcher;
 import org.slf4j.LoggerFactory;
 import ro.pippo.core.Application;
+import ro.pippo.core.ParameterValue;
+import ro.pippo.core.Request;
+import ro.pippo.core.Response;
+import ro.pippo.core.TemplateEngine;
+import ro.pippo.core.route.Route;
+import ro.pippo.core.route.RouteContext;
+import ro.pippo.core.route.RouteMatch;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.andromeda.fragments.Fragments.byOrder;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,6 +69,124 @@ import static org.mockito.Mockito.when;
  */
 public class FragmentsTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Renders the template name, the language of the request and the titles and languages of the fragments. */
+    private static class TestTemplateEngine implements TemplateEngine {
+        @Override
+        public void init(Application application) {
+        }
+
+        @Override
+        public void renderString(String templateContent, Map<String, Object> model, Writer writer) {
+            renderResource(templateContent, model, writer);
+        }
+
+        @Override
+        public void renderResource(String templateName, Map<String, Object> model, Writer writer) {
+            try {
+                writer.write(templateName + ":" + model.get("lang"));
+                FragmentView fragment = (FragmentView) model.get(Constants.FRAGMENT_ID);
+                if (fragment != null) {
+                    writer.write(":" + fragment.getTitle() + "/" + fragment.getLanguage());
+                }
+                for (Object view : (List<?>) model.get("fragments")) {
+                    writer.write("," + ((FragmentView) view).getTitle());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void setFileExtension(String extension) {
+        }
+    }
+
+    /** A GET request sent to the first matching route of an application, with mocked request and response. */
+    private static final class TestRequest {
+        private final Map<String, String> requestHeaders = new HashMap<>();
+        private String lang;
+        private Response response;
+        private boolean next;
+        private byte[] body;
+
+        TestRequest lang(String lang) {
+            this.lang = lang;
+            return this;
+        }
+
+        TestRequest header(String name, String value) {
+            requestHeaders.put(name, value);
+            return this;
+        }
+
+        /**
+         * Sends the request.
+         * @return This request, with the status, headers and body of the response.
+         */
+        TestRequest get(Application application, String path) throws Exception {
+            List<RouteMatch> matches = application.getRouter().findRoutes("GET", path);
+            assertThat(path, matches.isEmpty(), equalTo(false));
+            Map<String, String> parameters = new HashMap<>(matches.get(0).getPathParameters());
+            if (lang != null) {
+                parameters.put("lang", lang);
+            }
+            RouteContext routeContext = mock(RouteContext.class);
+            when(routeContext.getParameter(anyString())).thenAnswer(invocation -> {
+                String value = parameters.get(invocation.<String>getArgument(0));
+                return value == null ? new ParameterValue() : new ParameterValue(value);
+            });
+            HttpServletRequest servletRequest = mock(HttpServletRequest.class);
+            when(servletRequest.getHeader(anyString())).thenAnswer(invocation ->
+                    requestHeaders.get(invocation.<String>getArgument(0)));
+            when(servletRequest.getDateHeader(anyString())).thenReturn(-1L);
+            when(servletRequest.getParameterNames()).thenReturn(Collections.emptyEnumeration());
+            Request request = new Request(servletRequest, application);
+            when(routeContext.getRequest()).thenReturn(request);
+            HttpServletResponse servletResponse = mock(HttpServletResponse.class);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            when(servletResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+                @Override
+                public void write(int b) {
+                    out.write(b);
+                }
+            });
+            response = new Response(servletResponse, application);
+            when(routeContext.getResponse()).thenReturn(response);
+            doAnswer(invocation -> {
+                StringWriter writer = new StringWriter();
+                application.getTemplateEngine().renderResource(invocation.getArgument(0), invocation.getArgument(1),
+                        writer);
+                body = writer.toString().getBytes("UTF-8");
+                return null;
+            }).when(routeContext).render(anyString(), anyMap());
+            doAnswer(invocation -> {
+                next = true;
+                return null;
+            }).when(routeContext).next();
+            matches.get(0).getRoute().getRouteHandler().handle(routeContext);
+            if (body == null && out.size() > 0) {
+                body = out.toByteArray();
+            }
+            return this;
+        }
+
+        int getStatus() {
+            // No status set means 200
+            return response.getStatus() == 0 ? 200 : response.getStatus();
+        }
+
+        String getHeader(String name) {
+            return response.getHeader(name);
+        }
+
+        String getBody() throws Exception {
+            return body == null ? null : new String(body, "UTF-8");
+        }
+    }
+
     @Test
     public void testLanguageFragments() throws Exception {
         String currentPath = System.getProperty("user.dir");
@@ -161,6 +319,432 @@ public class FragmentsTest {
         }));
     }
 
+    /** Test that parallel loading results in the same order as sequential loading. */
+    @Test
+    public void testFragmentsParallelLoading() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Configuration sequential = new Configuration("order", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/more_tags/"), "",
+                "", 0);
+        Configuration parallel = new Configuration("order", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/more_tags/"), "",
+                "", 0);
+        parallel.setParallelLoading(true);
+        List<Fragment> expected = new Fragments(new Application(), sequential).getFragments(true);
+        Fragments fragments = new Fragments(new Application(), parallel);
+        List<Fragment> items = fragments.getFragments(true);
+        assertThat(items.size(), equalTo(expected.size()));
+        for (int i = 0; i < items.size(); i++) {
+            assertThat(items.get(i).getTitle(), equalTo(expected.get(i).getTitle()));
+            assertThat(items.get(i).getPreview(), equalTo(expected.get(i).getPreview()));
+        }
+        assertThat(fragments.getLoadingStatistics().getFiles(), equalTo(4L));
+    }
+
+    /** Test the recursive loading including the include/exclude patterns and the URL prefix. */
+    @Test
+    public void testFragmentsRecursive() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Configuration configuration = new Configuration("recursive", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                "", 0);
+        configuration.setRecursive(true);
+        configuration.setUrlPrefixFromPath(true);
+        configuration.setExcludes(Arrays.asList("blog", "general"));
+        Fragments fragments = new Fragments(new Application(), configuration);
+        List<Fragment> items = fragments.getFragments(true);
+        assertThat(items.size(), equalTo(11));
+        Set<String> urls = new HashSet<>();
+        for (Fragment fragment : items) {
+            urls.add(fragment.getUrl());
+        }
+        assertThat(urls.contains("/order/order_01"), equalTo(true));
+        assertThat(urls.contains("/tables/tables"), equalTo(true));
+        assertThat(urls.contains("/categories_and_tags_json"), equalTo(true));
+
+        configuration = new Configuration("recursive", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                "", 0);
+        configuration.setRecursive(true);
+        configuration.setParallelLoading(true);
+        configuration.setIncludes(Arrays.asList("more_tags/*"));
+        fragments = new Fragments(new Application(), configuration);
+        assertThat(fragments.getFragments(true).size(), equalTo(4));
+    }
+
+    /** Test that a second start takes all Fragments from the cache with the same result. */
+    @Test
+    public void testFragmentsCache() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Path cacheDirectory = temporaryFolder.newFolder("cache").toPath();
+        List<Fragment> expected = null;
+        for (int run = 0; run < 2; run++) {
+            Configuration configuration = new Configuration("Cache Test", "/",
+                    Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                    "", 0);
+            configuration.setRecursive(true);
+            configuration.setCacheDirectory(cacheDirectory);
+            Fragments fragments = new Fragments(new Application(), configuration);
+            List<Fragment> items = fragments.getFragments(true);
+            if (expected == null) {
+                expected = items;
+                assertThat(fragments.getLoadingStatistics().getCacheHits(), equalTo(0L));
+                assertThat(Files.exists(cacheDirectory.resolve("fragments_cache_test.cache")), equalTo(true));
+                continue;
+            }
+            assertThat(fragments.getLoadingStatistics().getCacheHits(), equalTo((long) items.size()));
+            assertThat(items.size(), equalTo(expected.size()));
+            for (int i = 0; i < items.size(); i++) {
+                assertThat(items.get(i).getUrl(), equalTo(expected.get(i).getUrl()));
+                assertThat(items.get(i).getDate(), equalTo(expected.get(i).getDate()));
+                assertThat(items.get(i).getTags(), equalTo(expected.get(i).getTags()));
+                assertThat(items.get(i).getFrontMatter(), equalTo(expected.get(i).getFrontMatter()));
+                assertThat(items.get(i).getLanguages(), equalTo(expected.get(i).getLanguages()));
+                assertThat(items.get(i).getPreviewTextOnly(), equalTo(expected.get(i).getPreviewTextOnly()));
+            }
+        }
+    }
+
+    /** Test that the compiled state is written without Java serialization and read back unchanged. */
+    @Test
+    public void testFragmentsCacheFormat() throws Exception {
+        Map<String, Object> frontMatter = new LinkedHashMap<>();
+        frontMatter.put("title", "Title");
+        frontMatter.put("tags", Arrays.asList("a", "b"));
+        frontMatter.put("visible", true);
+        frontMatter.put("count", 3);
+        frontMatter.put("price", new BigDecimal("1.50"));
+        frontMatter.put("date", new Date(1484216100000L));
+        frontMatter.put("author", new LinkedHashMap<>(frontMatter));
+        frontMatter.put("empty", null);
+        FragmentCache.CompiledFragment compiled = new FragmentCache.CompiledFragment(null, frontMatter);
+        compiled.addLanguage("en", "Text", "<p>Text</p>\n", null, null);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compiled.write(new DataOutputStream(bytes));
+        FragmentCache.CompiledFragment result = FragmentCache.CompiledFragment.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertThat(result.frontMatter, equalTo(frontMatter));
+        assertThat(Arrays.asList(result.languages.get("en")), equalTo(Arrays.asList("Text", "<p>Text</p>\n", null,
+                null)));
+
+        frontMatter.put("thread", new Object());
+        try {
+            compiled.write(new DataOutputStream(new ByteArrayOutputStream()));
+            throw new AssertionError("Unsupported value written");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), equalTo("Unsupported front matter value: java.lang.Object"));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFragmentsSnapshotImmutable() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Configuration configuration = new Configuration("Test", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        FragmentsSnapshot snapshot = fragments.getSnapshot();
+        assertThat(snapshot.getVisibleTags().get("z_tag").get(0),
+                equalTo(snapshot.getVisibleFragment("/categories_and_tags_json")));
+        fragments.getAllTags().get("z_tag").clear();
+    }
+
+    /** Test that the registered orders are sorted once per snapshot. */
+    @Test
+    public void testFragmentsOrders() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Configuration configuration = new Configuration("Test", "/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                "", 0);
+        Comparator<Fragment> byTitleReversed = Fragments.byTitle.reversed();
+        configuration.addOrder("title_reversed", byTitleReversed);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        List<Fragment> ordered = fragments.getVisibleFragmentOrdered("title_reversed");
+        assertThat(ordered, sameInstance(fragments.getVisibleFragmentOrdered(byTitleReversed)));
+        assertThat(ordered.size(), equalTo(fragments.getFragments(false).size()));
+        for (int i = 1; i < ordered.size(); i++) {
+            assertThat(ordered.get(i - 1).getTitle().compareTo(ordered.get(i).getTitle()) >= 0, equalTo(true));
+        }
+        assertThat(fragments.getVisibleFragmentOrdered(Fragments.byDate),
+                sameInstance(fragments.getVisibleFragmentOrdered("date")));
+        assertThat(fragments.getVisibleFragmentOrdered("unknown"), nullValue());
+    }
+
+    /** Test that the pages of the overview are registered, if noOfItemsPerPage is set. */
+    @Test
+    public void testFragmentsOverviewPages() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        Configuration configuration = new Configuration("Test", "/blog/",
+                Paths.get(currentPath + "/src/test/resources/fragments/tests/"), "",
+                "", 2);
+        Application application = new Application();
+        new Fragments(application, configuration);
+        boolean registered = false;
+        for (Route route : application.getRouter().getRoutes()) {
+            registered |= route.getUriPattern().startsWith("/blog" + Fragments.PAGE_PATH);
+        }
+        assertThat(registered, equalTo(true));
+    }
+
+    /** Test the routes and the sorted lists of the tag and category pages. */
+    @Test
+    public void testFragmentsTaxonomyRoutes() throws Exception {
+        Path directory = temporaryFolder.newFolder("taxonomies").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\norder: 2\ntags: [ a ]\n---\nFirst!\n"
+                .getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\norder: 1\ntags: [ a, b ]\n---\nSecond!\n"
+                .getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Taxonomies", "/", directory, "", "", 1);
+        configuration.setTaxonomyRoutes(true);
+        Application application = new Application();
+        Fragments fragments = new Fragments(application, configuration);
+        assertThat(application.getRouter().findRoutes("GET", "/tags/a").size(), equalTo(1));
+        assertThat(application.getRouter().findRoutes("GET", "/tags/a/page/2").size(), equalTo(1));
+        assertThat(application.getRouter().findRoutes("GET", "/categories/c").size(), equalTo(1));
+
+        FragmentsSnapshot snapshot = fragments.getSnapshot();
+        List<FragmentView> views = snapshot.getTaxonomyViews("en", false, "a");
+        assertThat(views.size(), equalTo(2));
+        assertThat(views.get(0).getTitle(), equalTo("Second"));
+        assertThat(snapshot.getTaxonomyViews("en", false, "a"), sameInstance(views));
+        assertThat(snapshot.getTaxonomyViews("en", false, "c"), nullValue());
+        assertThat(snapshot.getTaxonomyViews("en", true, "a"), nullValue());
+    }
+
+    /** Test that one route serves all fragments in dispatch mode. */
+    @Test
+    public void testFragmentsDispatchRoute() throws Exception {
+        String currentPath = System.getProperty("user.dir");
+        for (RouteType routeType : RouteType.values()) {
+            String directory = routeType == RouteType.BLOG ? "blog/" : "";
+            Configuration configuration = new Configuration("Test", "/",
+                    Paths.get(currentPath + "/src/test/resources/fragments/tests/" + directory), "",
+                    "", 0);
+            configuration.setRouteType(routeType);
+            configuration.setDispatchRoute(true);
+            Application application = new Application();
+            Fragments fragments = new Fragments(application, configuration);
+            // The dispatch route and the overview route
+            assertThat(application.getRouter().getRoutes().size(), equalTo(2));
+            for (Fragment fragment : fragments.getFragments(false)) {
+                assertThat(application.getRouter().findRoutes("GET", fragment.getUrl()).size(), equalTo(1));
+            }
+        }
+    }
+
+    /** Test that changed, new and deleted files are applied in watch mode. */
+    @Test
+    public void testFragmentsWatch() throws Exception {
+        Path directory = temporaryFolder.newFolder("watch").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\ntags: [ a ]\n---\nFirst!\n".getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\ntags: [ a ]\n---\nSecond!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Watch", "/", directory, "", "", 0);
+        configuration.setWatch(true);
+        configuration.setWatchDelay(50);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        try {
+            assertThat(fragments.getFragments(true).size(), equalTo(2));
+            assertThat(fragments.getAllTags().get("a").size(), equalTo(2));
+            FragmentsSnapshot before = fragments.getSnapshot();
+
+            Files.write(directory.resolve("first.md"), "---\ntitle: First\ntags: [ b ]\n---\nChanged!\n".getBytes("UTF-8"));
+            Files.write(directory.resolve("third.md"), "---\ntitle: Third\ntags: [ a ]\n---\nThird!\n".getBytes("UTF-8"));
+            Files.delete(directory.resolve("second.md"));
+            long timeout = System.currentTimeMillis() + 10000;
+            while (System.currentTimeMillis() < timeout && (fragments.getFragments(true).size() != 2
+                    || !fragments.getAllTags().containsKey("b") || fragments.getAllTags().get("a").size() != 1)) {
+                Thread.sleep(20);
+            }
+            List<Fragment> items = fragments.getFragments(true);
+            assertThat(items.size(), equalTo(2));
+            assertThat(items.get(0).getTitle(), equalTo("First"));
+            assertThat(items.get(0).getContent(), equalTo("<p>Changed!</p>\n"));
+            assertThat(items.get(1).getTitle(), equalTo("Third"));
+            assertThat(fragments.getAllTags().get("a").get(0).getTitle(), equalTo("Third"));
+            assertThat(fragments.getAllTags().get("b").get(0).getTitle(), equalTo("First"));
+            // The old snapshot is not changed
+            assertThat(before.getFragments(true).size(), equalTo(2));
+            assertThat(before.getAllTags().get("a").size(), equalTo(2));
+            assertThat(before.getVisibleFragment("/second").getTitle(), equalTo("Second"));
+            assertThat(fragments.getSnapshot().getVisibleFragment("/second"), equalTo(null));
+        } finally {
+            fragments.close();
+        }
+    }
+
+    /** Test that a changed position does not change the Fragments of the published snapshot. */
+    @Test
+    public void testFragmentsApplyChangesOrder() throws Exception {
+        Path directory = temporaryFolder.newFolder("order").toPath();
+        Files.write(directory.resolve("a.md"), "---\ntitle: A\n---\nA!\n".getBytes("UTF-8"));
+        Files.write(directory.resolve("c.md"), "---\ntitle: C\ntags: [ t ]\n---\nC!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Order", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        FragmentsSnapshot before = fragments.getSnapshot();
+        Fragment c = before.getVisibleFragment("/c");
+        assertThat(c.getOrder(), equalTo(1));
+
+        Files.write(directory.resolve("b.md"), "---\ntitle: B\n---\nB!\n".getBytes("UTF-8"));
+        fragments.applyChanges(Collections.singleton(directory.resolve("b.md")));
+        assertThat(c.getOrder(), equalTo(1));
+        assertThat(before.getFragments(true).get(1), sameInstance(c));
+        Fragment changed = fragments.getSnapshot().getVisibleFragment("/c");
+        assertThat(changed.getOrder(), equalTo(2));
+        assertThat(changed.getContent(), equalTo(c.getContent()));
+        assertThat(fragments.getAllTags().get("t"), equalTo(Collections.singletonList(changed)));
+        assertThat(before.getAllTags().get("t"), equalTo(Collections.singletonList(c)));
+        assertThat(fragments.getFragments(true).get(1).getOrder(), equalTo(1));
+    }
+
+    /** Test that only the lists of the changed tags are rebuilt, in the order of the Fragments. */
+    @Test
+    public void testFragmentsApplyChangesTaxonomies() throws Exception {
+        Path directory = temporaryFolder.newFolder("taxonomies").toPath();
+        for (String title : new String[] {"B", "C", "D"}) {
+            Files.write(directory.resolve(title.toLowerCase() + ".md"),
+                    ("---\ntitle: " + title + "\ntags: [ t ]\n---\n" + title + "!\n").getBytes("UTF-8"));
+        }
+        Files.write(directory.resolve("e.md"), "---\ntitle: E\norder: 1\ntags: [ u ]\n---\nE!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Taxonomies", "/", directory, "", "", 0);
+        Fragments fragments = new Fragments(new Application(), configuration);
+        List<Fragment> unchanged = fragments.getAllTags().get("u");
+
+        Files.write(directory.resolve("a.md"), "---\ntitle: A\ntags: [ t ]\n---\nA!\n".getBytes("UTF-8"));
+        fragments.applyChanges(Collections.singleton(directory.resolve("a.md")));
+        List<String> titles = new ArrayList<>();
+        for (Fragment fragment : fragments.getVisibleTags().get("t")) {
+            titles.add(fragment.getTitle());
+            assertThat(fragment, sameInstance(fragments.getSnapshot().getVisibleFragment(fragment.getUrl())));
+        }
+        assertThat(titles, contains("A", "B", "C", "D"));
+        assertThat(fragments.getAllTags().get("u"), sameInstance(unchanged));
+    }
+
+    /** Test that the render cache keeps the pages of different request languages with the same content apart. */
+    @Test
+    public void testFragmentsRenderCacheLanguage() throws Exception {
+        Path directory = temporaryFolder.newFolder("languages").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Languages", "/", directory, "", "fragment", 0);
+        configuration.setRenderCacheSize(10);
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine());
+        new Fragments(application, configuration);
+        // Both fall back to the English content
+        assertThat(new TestRequest().lang("de").get(application, "/first").getBody(),
+                equalTo("fragment:de:First/en,First"));
+        assertThat(new TestRequest().lang("fr").get(application, "/first").getBody(),
+                equalTo("fragment:fr:First/en,First"));
+        assertThat(new TestRequest().lang("de").get(application, "/first").getBody(),
+                equalTo("fragment:de:First/en,First"));
+    }
+
+    /** Test that the pages are not cached, if a dynamic context is set. */
+    @Test
+    public void testFragmentsRenderCacheDynamicContext() throws Exception {
+        Path directory = temporaryFolder.newFolder("dynamic").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Dynamic", "/", directory, "", "fragment", 0);
+        configuration.setRenderCacheSize(10);
+        AtomicInteger calls = new AtomicInteger();
+        configuration.setDynamicContext(context -> {
+            calls.incrementAndGet();
+            return context;
+        });
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine());
+        Fragments fragments = new Fragments(application, configuration);
+        new TestRequest().lang("en").get(application, "/first");
+        new TestRequest().lang("en").get(application, "/first");
+        assertThat(calls.get(), equalTo(2));
+        assertThat(fragments.getRenderCache().size(), equalTo(0));
+    }
+
+    /** Test that the top and the trending fragments are views in the language of the request. */
+    @Test
+    public void testFragmentsClicksLanguage() throws Exception {
+        Path directory = temporaryFolder.newFolder("clicks").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n--- de ---\nErster!\n"
+                .getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Clicks", "/", directory, "", "fragment", 0);
+        List<Object> top = new ArrayList<>();
+        configuration.setDynamicContext(context -> {
+            top.addAll((List<?>) context.get("top_fragments"));
+            top.addAll((List<?>) context.get("trending_fragments"));
+            return context;
+        });
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine());
+        Fragments fragments = new Fragments(application, configuration);
+        DBConfiguration dbConfig = new DBConfiguration(fragments, "1234");
+        dbConfig.setResetDB(true);
+        fragments.enableDatabase(dbConfig);
+        new TestRequest().lang("de").get(application, "/first");
+        assertThat(top.size(), equalTo(2));
+        for (Object view : top) {
+            assertThat(((FragmentView) view).getLanguage(), equalTo("de"));
+            assertThat(((FragmentView) view).getContent().trim(), equalTo("<p>Erster!</p>"));
+        }
+        fragments.close();
+    }
+
+    /** Test that the ETag of a fragment page depends on the language of the request. */
+    @Test
+    public void testFragmentsConditionalGetLanguage() throws Exception {
+        Path directory = temporaryFolder.newFolder("conditional").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\n---\nFirst!\n".getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Conditional", "/", directory, "", "fragment", 0);
+        configuration.setConditionalGet(true);
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine());
+        new Fragments(application, configuration);
+        TestRequest german = new TestRequest().lang("de").get(application, "/first");
+        String etag = german.getHeader(ConditionalGet.ETAG);
+        TestRequest french = new TestRequest().lang("fr").header(ConditionalGet.IF_NONE_MATCH, etag)
+                .get(application, "/first");
+        assertThat(french.getStatus(), equalTo(200));
+        assertThat(french.getBody(), equalTo("fragment:fr:First/en,First"));
+        assertThat(french.getHeader(ConditionalGet.ETAG), not(equalTo(etag)));
+        TestRequest again = new TestRequest().lang("de").header(ConditionalGet.IF_NONE_MATCH, etag)
+                .get(application, "/first");
+        assertThat(again.getStatus(), equalTo(ConditionalGet.NOT_MODIFIED));
+    }
+
+    /** Test that the compressed and the uncompressed page have different ETags. */
+    @Test
+    public void testFragmentsConditionalGetGzip() throws Exception {
+        Path directory = temporaryFolder.newFolder("gzip").toPath();
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            title.append("Title ");
+        }
+        Files.write(directory.resolve("first.md"), ("---\ntitle: " + title + "\n---\nFirst!\n").getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Gzip", "/", directory, "", "fragment", 0);
+        configuration.setConditionalGet(true);
+        configuration.setRenderCacheSize(10);
+        configuration.setPrecompress(true);
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine());
+        new Fragments(application, configuration);
+        TestRequest identity = new TestRequest().lang("en").get(application, "/first");
+        String etag = identity.getHeader(ConditionalGet.ETAG);
+        assertThat(identity.getHeader(RenderedPage.CONTENT_ENCODING), nullValue());
+        TestRequest gzip = new TestRequest().lang("en").header(RenderedPage.ACCEPT_ENCODING, "gzip")
+                .get(application, "/first");
+        assertThat(gzip.getHeader(RenderedPage.CONTENT_ENCODING), equalTo(RenderedPage.GZIP));
+        assertThat(gzip.getHeader(ConditionalGet.ETAG), equalTo(ConditionalGet.toGzipETag(etag)));
+
+        // Both forms are revalidated, the 304 response has the ETag of the form of the client
+        TestRequest notModified = new TestRequest().lang("en").header(RenderedPage.ACCEPT_ENCODING, "gzip")
+                .header(ConditionalGet.IF_NONE_MATCH, ConditionalGet.toGzipETag(etag)).get(application, "/first");
+        assertThat(notModified.getStatus(), equalTo(ConditionalGet.NOT_MODIFIED));
+        assertThat(notModified.getHeader(ConditionalGet.ETAG), equalTo(ConditionalGet.toGzipETag(etag)));
+        notModified = new TestRequest().lang("en").header(ConditionalGet.IF_NONE_MATCH, etag)
+                .get(application, "/first");
+        assertThat(notModified.getStatus(), equalTo(ConditionalGet.NOT_MODIFIED));
+        assertThat(notModified.getHeader(ConditionalGet.ETAG), equalTo(etag));
+    }
+
     @Test
     public void testFragmentsCompareTo() {
         String currentPath = System.getProperty("user.dir");
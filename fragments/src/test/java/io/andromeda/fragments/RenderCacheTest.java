@@ -0,0 +1,120 @@
+package io.andromeda.fragments;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class RenderCacheTest {
+
+    /** Test that the least recently used page is removed first. */
+    @Test
+    public void testRenderCacheLru() throws Exception {
+        RenderCache<String> cache = new RenderCache<>(2);
+        AtomicInteger renders = new AtomicInteger();
+        cache.get("a", () -> "A" + renders.incrementAndGet());
+        cache.get("b", () -> "B" + renders.incrementAndGet());
+        assertThat(cache.get("a", () -> "A" + renders.incrementAndGet()), equalTo("A1"));
+        cache.get("c", () -> "C" + renders.incrementAndGet());
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.get("a", () -> "A" + renders.incrementAndGet()), equalTo("A1"));
+        assertThat(cache.get("b", () -> "B" + renders.incrementAndGet()), equalTo("B4"));
+        assertThat(cache.getHits(), equalTo(2L));
+        assertThat(cache.getMisses(), equalTo(4L));
+
+        cache.invalidate();
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.get("a", () -> "A" + renders.incrementAndGet()), equalTo("A5"));
+    }
+
+    /** Test that the requests waiting for a page get the error of the render. */
+    @Test
+    public void testRenderCacheError() throws Exception {
+        RenderCache<String> cache = new RenderCache<>(10);
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> {
+            try {
+                cache.get("a", () -> {
+                    rendering.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new StackOverflowError();
+                });
+            } catch (StackOverflowError e) {
+                // expected
+            }
+        });
+        first.start();
+        rendering.await();
+        Throwable[] second = new Throwable[1];
+        Thread waiting = new Thread(() -> {
+            try {
+                cache.get("a", () -> "A");
+            } catch (Throwable e) {
+                second[0] = e;
+            }
+        });
+        waiting.start();
+        // Give the second request the time to wait for the first one
+        Thread.sleep(100);
+        release.countDown();
+        first.join();
+        waiting.join(10000);
+        assertThat(waiting.isAlive(), equalTo(false));
+        assertThat(second[0] == null || second[0] instanceof StackOverflowError, equalTo(true));
+        assertThat(cache.get("a", () -> "A"), equalTo("A"));
+    }
+
+    /** Test that a page rendered from data read before an invalidation is not stored. */
+    @Test
+    public void testRenderCacheStaleGeneration() throws Exception {
+        RenderCache<String> cache = new RenderCache<>(10);
+        // The request reads the generation and the old data, then the data is replaced and the cache invalidated
+        long generation = cache.getGeneration();
+        String data = "old";
+        cache.invalidate();
+        assertThat(cache.get("a", generation, () -> data), equalTo("old"));
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.get("a", cache.getGeneration(), () -> "new"), equalTo("new"));
+        assertThat(cache.get("a", cache.getGeneration(), () -> "newer"), equalTo("new"));
+    }
+
+    /** Test that concurrent misses of the same page render it only once. */
+    @Test
+    public void testRenderCacheCoalescing() throws Exception {
+        RenderCache<String> cache = new RenderCache<>(10);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> cache.get("a", () -> {
+            rendering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "A" + renders.incrementAndGet();
+        }));
+        first.start();
+        rendering.await();
+        String[] second = new String[1];
+        Thread waiting = new Thread(() -> second[0] = cache.get("a", () -> "A" + renders.incrementAndGet()));
+        waiting.start();
+        release.countDown();
+        first.join();
+        waiting.join();
+        assertThat(second[0], equalTo("A1"));
+        assertThat(renders.get(), equalTo(1));
+    }
+}
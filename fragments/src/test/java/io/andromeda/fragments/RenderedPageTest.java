@@ -0,0 +1,52 @@
+package io.andromeda.fragments;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class RenderedPageTest {
+
+    @Test
+    public void testRenderedPageGzip() throws Exception {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            html.append("<p>Grüße ").append(i).append("</p>\n");
+        }
+        RenderedPage page = new RenderedPage(html.toString(), true);
+        assertThat(new String(page.getBytes(), StandardCharsets.UTF_8), equalTo(html.toString()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page.getGzip()))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), equalTo(html.toString()));
+
+        // Not compressed, if disabled or if the compressed page is not smaller
+        assertThat(new RenderedPage(html.toString(), false).getGzip(), nullValue());
+        assertThat(new RenderedPage("<p>", true).getGzip(), nullValue());
+    }
+
+    @Test
+    public void testRenderedPageAcceptsGzip() throws Exception {
+        assertThat(RenderedPage.acceptsGzip(null), equalTo(false));
+        assertThat(RenderedPage.acceptsGzip("gzip, deflate, br"), equalTo(true));
+        assertThat(RenderedPage.acceptsGzip("deflate, GZIP;q=0.5"), equalTo(true));
+        assertThat(RenderedPage.acceptsGzip("*"), equalTo(true));
+        assertThat(RenderedPage.acceptsGzip("gzip;q=0"), equalTo(false));
+        assertThat(RenderedPage.acceptsGzip("deflate, br"), equalTo(false));
+    }
+}
@@ -0,0 +1,215 @@
+package io.andromeda.fragments;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.pippo.core.Application;
+import ro.pippo.core.TemplateEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class StaticExporterTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Renders the template name, the title of the fragment and the titles of the listed fragments. */
+    private static class TestTemplateEngine implements TemplateEngine {
+        /** The title of the fragment, which cannot be rendered, or null. */
+        private final String failing;
+
+        TestTemplateEngine(String failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public void init(Application application) {
+        }
+
+        @Override
+        public void renderString(String templateContent, Map<String, Object> model, Writer writer) {
+            renderResource(templateContent, model, writer);
+        }
+
+        @Override
+        public void renderResource(String templateName, Map<String, Object> model, Writer writer) {
+            try {
+                writer.write(templateName);
+                FragmentView fragment = (FragmentView) model.get(Constants.FRAGMENT_ID);
+                if (fragment != null) {
+                    if (fragment.getTitle().equals(failing)) {
+                        throw new IllegalStateException("Template error");
+                    }
+                    writer.write(":" + fragment.getTitle());
+                }
+                for (Object view : (List<?>) model.get("fragments")) {
+                    writer.write("," + ((FragmentView) view).getTitle());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void setFileExtension(String extension) {
+        }
+    }
+
+    private Fragments createFragments(Path directory) {
+        return createFragments(directory, null);
+    }
+
+    private Fragments createFragments(Path directory, String failing) {
+        Configuration configuration = new Configuration("Export", "/blog/", directory, "overview",
+                "default", 2);
+        configuration.setProtocol("https://");
+        configuration.setDomain("example.com");
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine(failing));
+        return new Fragments(application, configuration);
+    }
+
+    @Test
+    public void testStaticExport() throws Exception {
+        Path directory = temporaryFolder.newFolder("data").toPath();
+        Path output = temporaryFolder.newFolder("output").toPath();
+        for (String title : new String[] {"First", "Second", "Third"}) {
+            Files.write(directory.resolve(title.toLowerCase() + ".md"),
+                    ("---\ntitle: " + title + "\n---\n" + title + "!\n").getBytes("UTF-8"));
+        }
+        StaticExporter exporter = new StaticExporter(output).setIncremental(true)
+                .addGenerator((fragments, snapshot) -> Collections.singletonMap("feed.xml", "<feed/>"));
+
+        StaticExporter.Result result = exporter.export(createFragments(directory));
+        // 3 fragments, the overview, 2 overview pages, the feed and the sitemap
+        assertThat(result.toString(), result.getWritten(), equalTo(8L));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/second/index.html")), "UTF-8"),
+                equalTo("default:Second,First,Second,Third"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/index.html")), "UTF-8"),
+                equalTo("overview,First,Second"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/page/2/index.html")), "UTF-8"),
+                equalTo("overview,Third"));
+        assertThat(new String(Files.readAllBytes(output.resolve("feed.xml")), "UTF-8"), equalTo("<feed/>"));
+        assertThat(new String(Files.readAllBytes(output.resolve(StaticExporter.SITEMAP)), "UTF-8"),
+                containsString("<loc>https://example.com/blog/third</loc>"));
+
+        // Nothing changed
+        result = exporter.export(createFragments(directory));
+        assertThat(result.getWritten(), equalTo(0L));
+        assertThat(result.getUnchanged(), equalTo(8L));
+
+        // Only the changed outputs are written, the outputs of deleted fragments are deleted
+        Files.delete(directory.resolve("third.md"));
+        result = exporter.export(createFragments(directory));
+        assertThat(result.toString(), result.getDeleted(), equalTo(2L));
+        assertThat(Files.exists(output.resolve("blog/third/index.html")), equalTo(false));
+        assertThat(Files.exists(output.resolve("blog/page/2/index.html")), equalTo(false));
+        // first and second (list of the fragments) and the sitemap, but not the first overview page and the feed
+        assertThat(result.toString(), result.getWritten(), equalTo(3L));
+        assertThat(result.getUnchanged(), equalTo(3L));
+    }
+
+    /** Test that a page, which cannot be rendered, keeps the file of the previous export. */
+    @Test
+    public void testStaticExportRenderError() throws Exception {
+        Path directory = temporaryFolder.newFolder("data").toPath();
+        Path output = temporaryFolder.newFolder("output").toPath();
+        for (String title : new String[] {"First", "Second"}) {
+            Files.write(directory.resolve(title.toLowerCase() + ".md"),
+                    ("---\ntitle: " + title + "\n---\n" + title + "!\n").getBytes("UTF-8"));
+        }
+        StaticExporter exporter = new StaticExporter(output).setIncremental(true);
+        exporter.export(createFragments(directory));
+
+        StaticExporter.Result result = exporter.export(createFragments(directory, "Second"));
+        assertThat(result.toString(), result.getFailed(), equalTo(1L));
+        assertThat(result.getDeleted(), equalTo(0L));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/second/index.html")), "UTF-8"),
+                equalTo("default:Second,First,Second"));
+
+        // Still in the manifest
+        result = exporter.export(createFragments(directory));
+        assertThat(result.toString(), result.getWritten(), equalTo(0L));
+        assertThat(result.getDeleted(), equalTo(0L));
+    }
+
+    /** Test that the pages of the years, months and days are exported. */
+    @Test
+    public void testStaticExportArchive() throws Exception {
+        Path directory = temporaryFolder.newFolder("data").toPath();
+        Path output = temporaryFolder.newFolder("output").toPath();
+        Files.write(directory.resolve("first.md"), "---\ntitle: First\ndate: 2017-01-12\n---\nFirst!\n"
+                .getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\ndate: 2017-02-01\n---\nSecond!\n"
+                .getBytes("UTF-8"));
+        Configuration configuration = new Configuration("Export", "/blog/", directory, "overview", "default", 0);
+        configuration.setArchiveRoutes(true);
+        configuration.setDomain("example.com");
+        Application application = new Application();
+        application.setTemplateEngine(new TestTemplateEngine(null));
+        new StaticExporter(output).export(new Fragments(application, configuration));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/2017/index.html")), "UTF-8"),
+                equalTo("overview,First,Second"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/2017/02/index.html")), "UTF-8"),
+                equalTo("overview,Second"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/2017/01/12/index.html")), "UTF-8"),
+                equalTo("overview,First"));
+        assertThat(Files.exists(output.resolve("blog/2017/01/13/index.html")), equalTo(false));
+        assertThat(new String(Files.readAllBytes(output.resolve(StaticExporter.SITEMAP)), "UTF-8"),
+                containsString("<loc>https://example.com/blog/2017/01/12</loc>"));
+    }
+
+    /** Test that all pages of the tags and categories are exported. */
+    @Test
+    public void testStaticExportTaxonomies() throws Exception {
+        Path directory = temporaryFolder.newFolder("data").toPath();
+        Path output = temporaryFolder.newFolder("output").toPath();
+        Files.write(directory.resolve("first.md"),
+                "---\ntitle: First\ntags: [ a, b c ]\ncategories: [ x ]\n---\nFirst!\n".getBytes("UTF-8"));
+        Files.write(directory.resolve("second.md"), "---\ntitle: Second\ntags: [ a, c/d ]\n---\nSecond!\n"
+                .getBytes("UTF-8"));
+        Files.write(directory.resolve("third.md"), "---\ntitle: Third\ntags: [ a ]\n---\nThird!\n".getBytes("UTF-8"));
+        Fragments fragments = createFragments(directory);
+        fragments.getConfiguration().setTaxonomyRoutes(true);
+        new StaticExporter(output).export(fragments);
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/tags/a/index.html")), "UTF-8"),
+                equalTo("overview,First,Second"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/tags/a/page/1/index.html")), "UTF-8"),
+                equalTo("overview,First,Second"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/tags/a/page/2/index.html")), "UTF-8"),
+                equalTo("overview,Third"));
+        assertThat(Files.exists(output.resolve("blog/tags/a/page/3/index.html")), equalTo(false));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/tags/b c/index.html")), "UTF-8"),
+                equalTo("overview,First"));
+        assertThat(new String(Files.readAllBytes(output.resolve("blog/categories/x/index.html")), "UTF-8"),
+                equalTo("overview,First"));
+        // Not a path segment, the route does not match it either
+        assertThat(Files.exists(output.resolve("blog/tags/c/d/index.html")), equalTo(false));
+        String sitemap = new String(Files.readAllBytes(output.resolve(StaticExporter.SITEMAP)), "UTF-8");
+        assertThat(sitemap, containsString("<loc>https://example.com/blog/tags/a</loc>"));
+        assertThat(sitemap, containsString("<loc>https://example.com/blog/tags/a/page/2</loc>"));
+        assertThat(sitemap, containsString("<loc>https://example.com/blog/tags/b%20c</loc>"));
+        assertThat(sitemap, containsString("<loc>https://example.com/blog/categories/x</loc>"));
+    }
+
+    @Test
+    public void testStaticExportFile() throws Exception {
+        assertThat(StaticExporter.toFile("/"), equalTo("index.html"));
+        assertThat(StaticExporter.toFile("/blog"), equalTo("blog/index.html"));
+        assertThat(StaticExporter.toFile("//2017/01/12/slug"), equalTo("2017/01/12/slug/index.html"));
+    }
+}
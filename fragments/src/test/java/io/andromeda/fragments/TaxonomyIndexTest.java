@@ -0,0 +1,61 @@
+package io.andromeda.fragments;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ro.pippo.core.Application;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class TaxonomyIndexTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<String> titles(List<Fragment> fragments) {
+        return fragments.stream().map(Fragment::getTitle).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTaxonomyIndex() throws Exception {
+        Path directory = temporaryFolder.newFolder("taxonomies").toPath();
+        String[][] posts = {{"a", "3", "[ java, performance ]", "true"},
+                {"b", "1", "[ java, performance, draft ]", "true"}, {"c", "2", "[ java ]", "true"}, {"d", "4", "[ performance ]", "true"},
+                {"e", "5", "[ java, performance ]", "false"}};
+        for (String[] post : posts) {
+            Files.write(directory.resolve(post[0] + ".md"), ("---\ntitle: " + post[0] + "\norder: " + post[1]
+                    + "\ntags: " + post[2] + "\ncategories: [ blog ]\nvisible: " + post[3] + "\n---\n" + post[0]
+                    + "\n").getBytes("UTF-8"));
+        }
+        Fragments fragments = new Fragments(new Application(),
+                new Configuration("Taxonomies", "/", directory, "", "", 0));
+        TaxonomyIndex index = fragments.getTagIndex();
+
+        // Invisible fragments are not indexed
+        assertThat(index.getCount("java"), equalTo(3));
+        assertThat(index.getCount("unknown"), equalTo(0));
+        assertThat(index.getCounts().keySet(), contains("draft", "java", "performance"));
+        assertThat(index.getName(index.getId("draft")), equalTo("draft"));
+        assertThat(index.getId("unknown"), equalTo(-1));
+
+        assertThat(titles(index.query().and("java", "performance").not("draft").getFragments()), contains("a"));
+        assertThat(index.query().and("java", "performance").count(), equalTo(2));
+        assertThat(index.query().and("java", "unknown").getFragments(), empty());
+        assertThat(index.query().not("java").count(), equalTo(1));
+        assertThat(titles(index.query().or("draft", "java").getFragments(Fragments.byOrder)), contains("b", "c", "a"));
+        assertThat(titles(index.query().or("draft", "java").getFragments(Fragments.byTitle.reversed())),
+                contains("c", "b", "a"));
+        assertThat(fragments.getCategoryIndex().query().and("blog").count(), equalTo(4));
+    }
+}
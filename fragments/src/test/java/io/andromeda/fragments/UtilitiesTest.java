@@ -1005,4 +1005,28 @@ public class UtilitiesTest {
         String expectedLastUrl = "5";
         assertThat(lastItem.get("url"), CoreMatchers.equalTo(expectedLastUrl));
     }
+
+    @Test
+    public void testCalculatePaginationItemsPerPage() {
+        Map<String, Object> context = Utilities.calculatePagination(2, 5, 7, 3);
+        // The list has 7 items, 3 pages and "first", "last" and "previous", "next"
+        assertThat(context.size(), CoreMatchers.equalTo(7));
+        Map<String, Object> lastItem = (Map)context.get("last");
+        assertThat(lastItem.get("url"), CoreMatchers.equalTo("3"));
+        Map<String, Object> nextItem = (Map)context.get("next");
+        assertThat(nextItem.get("url"), CoreMatchers.equalTo("3"));
+        assertThat(Utilities.getNumberOfPages(0, 3), CoreMatchers.equalTo(1));
+        assertThat(Utilities.getNumberOfPages(6, 3), CoreMatchers.equalTo(2));
+        assertThat(Utilities.getNumberOfPages(7, 3), CoreMatchers.equalTo(3));
+    }
+
+    @Test
+    public void testCalculatePaginationEmpty() {
+        // One (empty) page with the number of items per page
+        Map<String, Object> lastItem = (Map) Utilities.calculatePagination(1, 5, 0, 10).get("last");
+        assertThat(lastItem.get("url"), CoreMatchers.equalTo("1"));
+        // No pages without it, unchanged for existing callers
+        lastItem = (Map) Utilities.calculatePagination(1, 5, 0).get("last");
+        assertThat(lastItem.get("url"), CoreMatchers.equalTo("0"));
+    }
 }
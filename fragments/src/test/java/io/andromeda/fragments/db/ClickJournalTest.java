@@ -0,0 +1,122 @@
+package io.andromeda.fragments.db;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class ClickJournalTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static long countSegments(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).count();
+        }
+    }
+
+    /** Test that the clicks are replayed after reopening the journal. */
+    @Test
+    public void testClickJournalReplay() throws Exception {
+        Path directory = temporaryFolder.newFolder("journal").toPath();
+        ClickJournal journal = new ClickJournal(directory, 100, -1);
+        for (int i = 0; i < 3; i++) {
+            journal.addClick("a");
+        }
+        journal.addClick("b");
+        assertThat(journal.load().get("a"), equalTo(3L));
+        // No close(), like a crash of the JVM: the records are in the mapped files
+        journal = new ClickJournal(directory, 100, 0);
+        assertThat(journal.load().get("a"), equalTo(3L));
+        journal.addClick("b");
+        journal.close();
+
+        journal = new ClickJournal(directory, 100, -1);
+        assertThat(journal.load().get("b"), equalTo(2L));
+        journal.close();
+    }
+
+    /** Test that full segments are replaced and compacted into the totals. */
+    @Test
+    public void testClickJournalCompaction() throws Exception {
+        Path directory = temporaryFolder.newFolder("journal").toPath();
+        ClickJournal journal = new ClickJournal(directory, 4, 10);
+        for (int i = 0; i < 10; i++) {
+            journal.addClick(i % 2 == 0 ? "a" : "b");
+        }
+        assertThat(journal.getNumberOfSegments(), equalTo(3));
+        journal.write(Collections.<String, Long>emptyMap());
+        assertThat(journal.getNumberOfSegments(), equalTo(1));
+        assertThat(countSegments(directory), equalTo(1L));
+        assertThat(journal.load().get("a"), equalTo(5L));
+        journal.addClick("a");
+        journal.close();
+
+        journal = new ClickJournal(directory, 4, 10);
+        assertThat(journal.load().get("a"), equalTo(6L));
+        assertThat(journal.load().get("b"), equalTo(5L));
+        journal.close();
+    }
+
+    /** Test that sync() forces the full segments, which are not compacted yet, with the current one. */
+    @Test
+    public void testClickJournalSyncFullSegments() throws Exception {
+        Path directory = temporaryFolder.newFolder("journal").toPath();
+        ClickJournal journal = new ClickJournal(directory, 2, -1);
+        for (int i = 0; i < 5; i++) {
+            journal.addClick("a");
+        }
+        assertThat(journal.getNumberOfSegments(), equalTo(3));
+        journal.sync();
+        // Not compacted, the full segments are still there
+        assertThat(countSegments(directory), equalTo(3L));
+        journal = new ClickJournal(directory, 2, -1);
+        assertThat(journal.load().get("a"), equalTo(5L));
+        journal.close();
+    }
+
+    /** Test that incomplete records and names are skipped. */
+    @Test
+    public void testClickJournalIncompleteRecords() throws Exception {
+        Path directory = temporaryFolder.newFolder("journal").toPath();
+        ClickJournal journal = new ClickJournal(directory, 100, -1);
+        journal.addClick("a");
+        journal.addClick("a");
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(path -> path.getFileName().toString().endsWith(".journal")).findFirst().get();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // The check value of the second record is missing
+            file.seek(ClickJournal.RECORD_SIZE + 8);
+            file.writeLong(0);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("names").toFile(), "rw")) {
+            // A name cut off while writing it
+            file.seek(file.length());
+            file.write(new byte[] {0, 5, 'b'});
+        }
+        journal = new ClickJournal(directory, 100, -1);
+        assertThat(journal.load().get("a"), equalTo(1L));
+        journal.addClick("c");
+        journal.close();
+        journal = new ClickJournal(directory, 100, -1);
+        assertThat(journal.load().get("b"), nullValue());
+        assertThat(journal.load().get("c"), equalTo(1L));
+        journal.close();
+    }
+}
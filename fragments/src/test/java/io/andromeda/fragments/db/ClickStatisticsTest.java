@@ -0,0 +1,61 @@
+package io.andromeda.fragments.db;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class ClickStatisticsTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    /** Test that the clicks are counted in the windows and old buckets are dropped. */
+    @Test
+    public void testClickStatisticsWindows() throws Exception {
+        AtomicLong now = new AtomicLong(1000 * 24 * HOUR);
+        ClickStatistics statistics = new ClickStatistics(now::get);
+        statistics.addClick("a");
+        statistics.addClick("a");
+        now.addAndGet(2 * HOUR);
+        statistics.addClick("a");
+        statistics.addClick("b");
+        assertThat(statistics.getClicks("a", HOUR), equalTo(1L));
+        assertThat(statistics.getClicks("a", ClickStatistics.DAY), equalTo(3L));
+        assertThat(statistics.getClicks("c", ClickStatistics.DAY), equalTo(0L));
+
+        now.addAndGet(ClickStatistics.DAY);
+        assertThat(statistics.getClicks("a", ClickStatistics.DAY), equalTo(0L));
+        assertThat(statistics.getClicks("a", ClickStatistics.WEEK), equalTo(3L));
+        // The ring of the hours only keeps 7 days, the days are counted for 30 days
+        now.addAndGet(ClickStatistics.WEEK);
+        assertThat(statistics.getClicks("a", ClickStatistics.WEEK), equalTo(0L));
+        assertThat(statistics.getClicks("a", 30 * ClickStatistics.DAY), equalTo(3L));
+        assertThat(statistics.getHour("a", now.get() / HOUR), equalTo(0L));
+    }
+
+    /** Test the top of a window, it is computed once per minute. */
+    @Test
+    public void testClickStatisticsTop() throws Exception {
+        AtomicLong now = new AtomicLong(1000 * 24 * HOUR);
+        ClickStatistics statistics = new ClickStatistics(now::get);
+        statistics.addClick("a");
+        statistics.addHour("b", now.get() / HOUR - 1, 5);
+        statistics.addClick("c");
+        statistics.addClick("c");
+        assertThat(statistics.getTop(ClickStatistics.DAY, 2), contains("b", "c"));
+        assertThat(statistics.getTop(HOUR, 5), contains("c", "a"));
+        statistics.addClick("a");
+        statistics.addClick("a");
+        assertThat(statistics.getTop(HOUR, 5), contains("c", "a"));
+        now.addAndGet(60 * 1000L);
+        assertThat(statistics.getTop(HOUR, 5), contains("a", "c"));
+        assertThat(statistics.getChanged(), containsInAnyOrder("a", "c"));
+    }
+}
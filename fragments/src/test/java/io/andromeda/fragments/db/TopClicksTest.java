@@ -0,0 +1,54 @@
+package io.andromeda.fragments.db;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+
+
+/**
+ * @author Alexander Brandt
+ */
+public class TopClicksTest {
+
+    /** Test that a name enters the top, as soon as it has more clicks than the last one. */
+    @Test
+    public void testTopClicks() throws Exception {
+        TopClicks top = new TopClicks(2);
+        top.update("a", 5);
+        top.update("b", 3);
+        top.update("c", 3);
+        assertThat(top.get(), contains("a", "b"));
+        top.update("c", 4);
+        assertThat(top.get(), contains("a", "c"));
+        top.update("c", 6);
+        assertThat(top.get(), contains("c", "a"));
+        // Reported out of order
+        top.update("c", 5);
+        assertThat(top.get(), contains("c", "a"));
+        assertThat(new TopClicks(0).get(), empty());
+    }
+
+    /** Test that the top is only replaced, when the order changes. */
+    @Test
+    public void testTopClicksUnchangedOrder() throws Exception {
+        TopClicks top = new TopClicks(2);
+        top.update("a", 5);
+        top.update("b", 3);
+        List<String> before = top.get();
+        top.update("a", 6);
+        top.update("b", 4);
+        assertThat(top.get(), sameInstance(before));
+        // The threshold follows the clicks of the last name
+        top.update("c", 4);
+        assertThat(top.get(), contains("a", "b"));
+        top.update("b", 7);
+        assertThat(top.get(), contains("b", "a"));
+        top.update("c", 7);
+        assertThat(top.get(), contains("b", "c"));
+    }
+}